@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.localnotification;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes the actions called from JS to their handlers. Each action is
+ * registered once with a policy which decides where it runs. Queries run
+ * on a pool of their own, so that they don't have to wait behind heavy
+ * mutations. Mutations run in order per notification ID, mutations of
+ * independent IDs in parallel.
+ */
+class ActionRouter {
+
+    /**
+     * Where an action gets executed.
+     */
+    enum Policy {
+        // On the pool for queries
+        READ,
+        // On the writer lanes of the affected notifications
+        WRITE
+    }
+
+    /**
+     * How to read the IDs of the notifications affected by a mutation from
+     * the exec() arguments.
+     */
+    enum Keys {
+        // The first argument is the ID
+        ID,
+        // The arguments are IDs
+        IDS,
+        // The arguments are options with an ID
+        OPTIONS,
+        // All notifications are affected
+        ALL
+    }
+
+    /**
+     * Handler of an action.
+     */
+    interface Handler {
+
+        /**
+         * Execute the action.
+         *
+         * @param args
+         *      The exec() arguments in JSON form.
+         * @param command
+         *      The callback context used when calling back into JavaScript.
+         */
+        void handle (JSONArray args, CallbackContext command);
+    }
+
+    // Number of threads for queries
+    private static final int READ_THREADS = 2;
+
+    // Number of lanes for mutations
+    private static final int WRITE_LANES = 4;
+
+    // Pool for queries, shared by all plugin instances
+    private static final Executor reader = newExecutor("Read", READ_THREADS);
+
+    // Lanes for mutations, shared by all plugin instances
+    private static final StripedExecutor writer =
+            new StripedExecutor("LocalNotification-Write", WRITE_LANES);
+
+    // Registered handlers keyed by action name
+    private final Map<String, Route> routes = new HashMap<String, Route>();
+
+    /**
+     * Handler with its policy.
+     */
+    private static class Route {
+
+        // Where to execute the handler
+        final Policy policy;
+
+        // IDs of the affected notifications, null for queries
+        final Keys keys;
+
+        // The action handler
+        final Handler handler;
+
+        Route (Policy policy, Keys keys, Handler handler) {
+            this.policy  = policy;
+            this.keys    = keys;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Register the handler of a query, which runs on the read pool.
+     *
+     * @param action
+     *      The action name
+     * @param handler
+     *      The action handler
+     */
+    ActionRouter read (String action, Handler handler) {
+        routes.put(action, new Route(Policy.READ, null, handler));
+        return this;
+    }
+
+    /**
+     * Register the handler of a mutation, which runs on the lane of the
+     * affected notifications.
+     *
+     * @param action
+     *      The action name
+     * @param keys
+     *      How to read the IDs of the affected notifications
+     * @param handler
+     *      The action handler
+     */
+    ActionRouter write (String action, Keys keys, Handler handler) {
+        routes.put(action, new Route(Policy.WRITE, keys, handler));
+        return this;
+    }
+
+    /**
+     * Execute the handler of the action according to its policy.
+     *
+     * @param action
+     *      The action name
+     * @param args
+     *      The exec() arguments in JSON form.
+     * @param command
+     *      The callback context used when calling back into JavaScript.
+     *
+     * @return
+     *      false if no handler is registered for the action
+     */
+    boolean dispatch (String action, final JSONArray args,
+                      final CallbackContext command) {
+
+        final Route route = routes.get(action);
+
+        if (route == null)
+            return false;
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                route.handler.handle(args, command);
+            }
+        };
+
+        if (route.policy == Policy.READ) {
+            reader.execute(task);
+            return true;
+        }
+
+        int lane = getLane(route.keys, args);
+
+        if (lane < 0) {
+            writer.executeExclusive(task);
+        } else {
+            writer.execute(lane, task);
+        }
+
+        return true;
+    }
+
+    /**
+     * Execute a mutation of all notifications which isn't called from JS,
+     * e.g. on teardown of the plugin. Runs after all prior mutations and
+     * before all later ones like an action registered with Keys.ALL.
+     *
+     * @param task
+     *      The mutation to execute
+     */
+    void executeExclusive (Runnable task) {
+        writer.executeExclusive(task);
+    }
+
+    /**
+     * Lane of the notifications affected by the mutation.
+     *
+     * @param keys
+     *      How to read the IDs of the affected notifications
+     * @param args
+     *      The exec() arguments in JSON form.
+     *
+     * @return
+     *      -1 if the notifications belong to several lanes
+     */
+    private int getLane (Keys keys, JSONArray args) {
+
+        if (keys == Keys.ALL)
+            return -1;
+
+        if (keys == Keys.ID || args.length() == 0)
+            return writer.laneOf(args.optInt(0));
+
+        int lane = -1;
+
+        for (int i = 0; i < args.length(); i++) {
+            int id;
+
+            if (keys == Keys.OPTIONS) {
+                JSONObject options = args.optJSONObject(i);
+                id = options != null ? options.optInt("id", 0) : 0;
+            } else {
+                id = args.optInt(i, 0);
+            }
+
+            int next = writer.laneOf(id);
+
+            if (lane >= 0 && lane != next)
+                return -1;
+
+            lane = next;
+        }
+
+        return lane;
+    }
+
+    /**
+     * Executor with daemon threads which time out when idle.
+     *
+     * @param name
+     *      Name of the threads
+     * @param threads
+     *      Number of threads
+     */
+    private static Executor newExecutor (final String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread (Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "LocalNotification-" + name + "-" + count.incrementAndGet());
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.localnotification;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append-only journal of the events raised by the receivers which couldn't
+ * be delivered to JS, so that they survive the death of the process, e.g.
+ * if a receiver woke up the app in background. Each event is one line of JSON next to its
+ * unique ID, the message itself stays untouched. The journal gets
+ * replayed and truncated once the event channel is available.
+ */
+class EventJournal {
+
+    // Max. size of the journal in bytes, the older half gets dropped then
+    private static final long MAX_SIZE = 256 * 1024;
+
+    // File name of the journal
+    private static final String FILE_NAME = "localnotification-events.log";
+
+    // Key of the unique ID of a journaled event
+    static final String KEY_JID = "jid";
+
+    // The single instance per process
+    private static EventJournal instance;
+
+    // Sequence number to build unique IDs within the process
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    // Unique IDs of the messages journaled by this process
+    private final Map<JSONObject, String> journaled =
+            new WeakHashMap<JSONObject, String>();
+
+    // The journal file
+    private final File file;
+
+    /**
+     * Constructor
+     *
+     * @param file
+     *      The journal file
+     */
+    private EventJournal (File file) {
+        this.file = file;
+    }
+
+    /**
+     * Static method to retrieve the shared instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static synchronized EventJournal getInstance (Context context) {
+        if (instance == null) {
+            Context ctx = context.getApplicationContext();
+            instance    = new EventJournal(new File(ctx.getFilesDir(), FILE_NAME));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Append the message with a unique ID to the journal.
+     *
+     * @param key
+     *      Key to collapse repeated events or null
+     * @param message
+     *      The event message
+     */
+    synchronized void append (String key, JSONObject message) {
+        JSONObject entry = new JSONObject();
+        String jid = System.currentTimeMillis() + "-"
+                + android.os.Process.myPid() + "-"
+                + sequence.incrementAndGet();
+
+        try {
+            entry.put(KEY_JID, jid);
+            entry.put("key", key != null ? key : JSONObject.NULL);
+            entry.put("msg", message);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        journaled.put(message, jid);
+
+        if (file.length() > MAX_SIZE) {
+            compact();
+        }
+
+        write(entry.toString() + "\n", true);
+    }
+
+    /**
+     * Events of the journal in their order of arrival followed by the
+     * given pending ones. Drops duplicates and all but the latest event
+     * with the same key. Keeps the latest events up to the capacity.
+     * Truncates the journal afterwards.
+     *
+     * @param pending
+     *      Messages queued in memory, which might be journaled as well
+     * @param capacity
+     *      Max. number of events
+     */
+    synchronized JSONArray replay (JSONArray pending, int capacity) {
+        List<JSONObject> entries = read();
+        List<JSONObject> messages = new ArrayList<JSONObject>(entries.size());
+        Map<String, Integer> latest = new HashMap<String, Integer>();
+        Set<String> seen = new HashSet<String>();
+
+        for (JSONObject entry : entries) {
+            JSONObject message = entry.optJSONObject("msg");
+
+            if (message == null)
+                continue;
+
+            String jid = entry.optString(KEY_JID);
+
+            if (!seen.add(jid))
+                continue;
+
+            String key = entry.isNull("key") ? null : entry.optString("key");
+
+            if (key != null && latest.containsKey(key)) {
+                messages.set(latest.get(key), null);
+            }
+
+            if (key != null) {
+                latest.put(key, messages.size());
+            }
+
+            messages.add(message);
+        }
+
+        for (int i = 0; i < pending.length(); i++) {
+            JSONObject message = pending.optJSONObject(i);
+            String jid = message != null ? journaled.get(message) : null;
+
+            if (message != null && (jid == null || !seen.contains(jid))) {
+                messages.add(message);
+            }
+        }
+
+        List<JSONObject> merged = new ArrayList<JSONObject>(messages.size());
+
+        for (JSONObject message : messages) {
+            if (message != null) {
+                merged.add(message);
+            }
+        }
+
+        JSONArray events = new JSONArray();
+        int from = Math.max(0, merged.size() - capacity);
+
+        for (int i = from; i < merged.size(); i++) {
+            events.put(merged.get(i));
+        }
+
+        journaled.clear();
+        file.delete();
+
+        return events;
+    }
+
+    /**
+     * Drop the older half of the journal.
+     */
+    private void compact () {
+        List<JSONObject> entries = read();
+        StringBuilder data = new StringBuilder();
+
+        for (int i = entries.size() / 2; i < entries.size(); i++) {
+            data.append(entries.get(i).toString()).append('\n');
+        }
+
+        write(data.toString(), false);
+    }
+
+    /**
+     * All readable entries of the journal. Skips broken lines, e.g. a line
+     * which has been cut by the death of the process.
+     */
+    private List<JSONObject> read () {
+        List<JSONObject> entries = new ArrayList<JSONObject>();
+
+        if (!file.exists())
+            return entries;
+
+        BufferedReader reader = null;
+
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), "UTF-8"));
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                try {
+                    entries.add(new JSONObject(line));
+                } catch (JSONException ignore) {}
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close(reader);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Write the data to the journal.
+     *
+     * @param data
+     *      Lines of JSON
+     * @param append
+     *      Set to false to replace the content
+     */
+    private void write (String data, boolean append) {
+        OutputStream out = null;
+
+        try {
+            out = new FileOutputStream(file, append);
+            out.write(data.getBytes("UTF-8"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Close the stream and ignore any error.
+     */
+    private static void close (Closeable stream) {
+        if (stream == null)
+            return;
+
+        try {
+            stream.close();
+        } catch (IOException ignore) {}
+    }
+
+}
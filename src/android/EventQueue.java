@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.localnotification;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free queue for the events which can't be delivered to JS yet, e.g.
+ * before deviceready or while the app isn't running. An event with the
+ * same key as a queued one removes it and gets queued as the latest, the
+ * same rule as in the event journal. The queue is bounded, the oldest
+ * events get dropped first. The pending events are drained at once to
+ * deliver them in a single batch.
+ */
+class EventQueue {
+
+    // Queued events in their order of arrival
+    private final ConcurrentLinkedQueue<Slot> queue =
+            new ConcurrentLinkedQueue<Slot>();
+
+    // Queued events with a collapse key
+    private final ConcurrentHashMap<String, Slot> pending =
+            new ConcurrentHashMap<String, Slot>();
+
+    // Number of queued events
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Max. number of queued events
+    private final int capacity;
+
+    /**
+     * Queued event. Removed from the queue either by a poll or by a later
+     * event with the same key, never by both.
+     */
+    private static class Slot {
+
+        // Collapse key or null
+        final String key;
+
+        // The event message
+        final JSONObject message;
+
+        Slot (String key, JSONObject message) {
+            this.key     = key;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity
+     *      Max. number of queued events
+     */
+    EventQueue (int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queue the event. Removes a queued event with the same key, drops the
+     * oldest events if the queue is full.
+     *
+     * @param key
+     *      Collapse key like event name and notification ID or null
+     * @param message
+     *      The event message
+     */
+    void offer (String key, JSONObject message) {
+        Slot slot = new Slot(key, message);
+
+        if (key != null) {
+            Slot former = pending.put(key, slot);
+
+            if (former != null && queue.remove(former)) {
+                size.decrementAndGet();
+            }
+        }
+
+        queue.offer(slot);
+
+        if (size.incrementAndGet() > capacity) {
+            poll();
+        }
+    }
+
+    /**
+     * If no events are queued.
+     */
+    boolean isEmpty () {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Take all queued events in their order of arrival.
+     */
+    JSONArray drain () {
+        JSONArray messages = new JSONArray();
+        Slot slot;
+
+        while ((slot = poll()) != null) {
+            messages.put(slot.message);
+        }
+
+        return messages;
+    }
+
+    /**
+     * Remove the oldest slot from the queue and from the pending keys.
+     */
+    private Slot poll () {
+        Slot slot = queue.poll();
+
+        if (slot == null)
+            return null;
+
+        size.decrementAndGet();
+
+        if (slot.key != null) {
+            pending.remove(slot.key, slot);
+        }
+
+        return slot;
+    }
+
+}
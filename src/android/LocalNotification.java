@@ -23,8 +23,6 @@
 
 package de.appplant.cordova.plugin.localnotification;
 
-import android.app.Activity;
-
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
@@ -34,12 +32,16 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import de.appplant.cordova.plugin.notification.IntentPayload;
 import de.appplant.cordova.plugin.notification.Manager;
 import de.appplant.cordova.plugin.notification.Notification;
+import de.appplant.cordova.plugin.notification.NotificationRecord;
+import de.appplant.cordova.plugin.notification.NotifyDispatcher;
+import de.appplant.cordova.plugin.notification.Scheduler;
 
 /**
  * This plugin utilizes the Android AlarmManager in combination with local
@@ -49,17 +51,30 @@ import de.appplant.cordova.plugin.notification.Notification;
  */
 public class LocalNotification extends CordovaPlugin {
 
-    // Reference to the web view for static access
-    private static CordovaWebView webView = null;
+    // Routes the actions to their handlers
+    private final ActionRouter router = createRouter();
 
-    // Indicates if the device is ready (to receive events)
-    private static Boolean deviceready = false;
+    // Kept callback of JS to push the events, set after deviceready
+    private static volatile CallbackContext eventChannel = null;
 
     // To inform the user about the state of the app in callbacks
     protected static Boolean isInBackground = true;
 
+    // Max. number of notifications per chunk of streamed results
+    private static final int CHUNK_SIZE = 100;
+
+    // Max. number of events queued before deviceready
+    private static final int MAX_QUEUED_EVENTS = 100;
+
     // Queues all events before deviceready
-    private static ArrayList<String> eventQueue = new ArrayList<String>();
+    private static final EventQueue eventQueue =
+            new EventQueue(MAX_QUEUED_EVENTS);
+
+    // Persists the queued events in case the process dies before deviceready
+    private static volatile EventJournal journal = null;
+
+    // If the journal might contain events of a former process
+    private static boolean replayJournal = true;
 
     /**
      * Called after plugin construction and fields have been initialized.
@@ -70,7 +85,27 @@ public class LocalNotification extends CordovaPlugin {
      */
     @Override
     public void initialize (CordovaInterface cordova, CordovaWebView webView) {
-        LocalNotification.webView = super.webView;
+        journal = EventJournal.getInstance(cordova.getActivity());
+
+        Notification.setDefaultTriggerReceiver(TriggerReceiver.class);
+
+        boolean singleAlarm = preferences.getBoolean(
+                "LocalNotificationSingleAlarm", false);
+
+        Scheduler.setEnabled(cordova.getActivity(), singleAlarm,
+                TriggerReceiver.class);
+
+        boolean idOnlyIntents = preferences.getBoolean(
+                "LocalNotificationIdOnlyIntents", false);
+
+        IntentPayload.setIdOnly(cordova.getActivity(), idOnlyIntents);
+
+        long notifyInterval = preferences.getInteger(
+                "LocalNotificationNotifyInterval",
+                (int) NotifyDispatcher.DEFAULT_INTERVAL);
+
+        NotifyDispatcher.getInstance(cordova.getActivity())
+                .setMinInterval(notifyInterval);
     }
 
     /**
@@ -95,7 +130,7 @@ public class LocalNotification extends CordovaPlugin {
     public void onResume(boolean multitasking) {
         super.onResume(multitasking);
         isInBackground = false;
-        deviceready();
+        flushEvents();
     }
 
     /**
@@ -103,21 +138,28 @@ public class LocalNotification extends CordovaPlugin {
      */
     @Override
     public void onDestroy() {
-        deviceready = false;
+        synchronized (LocalNotification.class) {
+            eventChannel = null;
+        }
+
         isInBackground = true;
 
-        clearAll();
+        // Runs after the pending mutations of JS, like an exec() call would.
+        // Doesn't fire the clearall event, nobody is listening anymore.
+        router.executeExclusive(new Runnable() {
+            @Override
+            public void run() {
+                getNotificationMgr().clearAll();
+            }
+        });
     }
 
     /**
      * Executes the request.
      *
-     * This method is called from the WebView thread. To do a non-trivial
-     * amount of work, use:
-     *      cordova.getThreadPool().execute(runnable);
-     *
-     * To run on the UI thread, use:
-     *     cordova.getActivity().runOnUiThread(runnable);
+     * This method is called from the WebView thread. The router executes
+     * the action according to its policy, queries on the read pool and
+     * mutations on the writer lane of the affected notifications.
      *
      * @param action
      *      The action to execute.
@@ -129,80 +171,146 @@ public class LocalNotification extends CordovaPlugin {
      *      Whether the action was valid.
      */
     @Override
-    public boolean execute (final String action, final JSONArray args,
-                            final CallbackContext command) throws JSONException {
+    public boolean execute (String action, JSONArray args,
+                            CallbackContext command) throws JSONException {
 
-        Notification.setDefaultTriggerReceiver(TriggerReceiver.class);
+        return router.dispatch(action, args, command);
+    }
 
-        cordova.getThreadPool().execute(new Runnable() {
-            public void run() {
-                if (action.equals("schedule")) {
-                    schedule(args);
-                    command.success();
-                }
-                else if (action.equals("update")) {
-                    update(args);
-                    command.success();
-                }
-                else if (action.equals("cancel")) {
-                    cancel(args);
-                    command.success();
-                }
-                else if (action.equals("cancelAll")) {
-                    cancelAll();
-                    command.success();
-                }
-                else if (action.equals("clear")) {
-                    clear(args);
-                    command.success();
-                }
-                else if (action.equals("clearAll")) {
-                    clearAll();
-                    command.success();
-                }
-                else if (action.equals("isPresent")) {
-                    isPresent(args.optInt(0), command);
-                }
-                else if (action.equals("isScheduled")) {
-                    isScheduled(args.optInt(0), command);
-                }
-                else if (action.equals("isTriggered")) {
-                    isTriggered(args.optInt(0), command);
-                }
-                else if (action.equals("getAllIds")) {
-                    getAllIds(command);
-                }
-                else if (action.equals("getScheduledIds")) {
-                    getScheduledIds(command);
-                }
-                else if (action.equals("getTriggeredIds")) {
-                    getTriggeredIds(command);
-                }
-                else if (action.equals("getSingle")) {
-                    getSingle(args, command);
-                }
-                else if (action.equals("getSingleScheduled")) {
-                    getSingleScheduled(args, command);
-                }
-                else if (action.equals("getSingleTriggered")) {
-                    getSingleTriggered(args, command);
-                }
-                else if (action.equals("getAll")) {
-                    getAll(args, command);
-                }
-                else if (action.equals("getScheduled")) {
-                    getScheduled(args, command);
-                }
-                else if (action.equals("getTriggered")) {
-                    getTriggered(args, command);
-                }
-                else if (action.equals("deviceready")) {
-                    deviceready();
-                }
+    /**
+     * Register the handlers of all actions. Queries run on the read pool,
+     * mutations in order per notification ID on the writer lanes.
+     */
+    private ActionRouter createRouter () {
+        ActionRouter router = new ActionRouter();
+
+        router.write("schedule", ActionRouter.Keys.OPTIONS, new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                schedule(args, command);
+            }
+        });
+
+        router.write("update", ActionRouter.Keys.OPTIONS, new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                update(args);
+                command.success();
+            }
+        });
+
+        router.write("updateProgress", ActionRouter.Keys.ID, new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                updateProgress(args.optInt(0), args.optInt(1));
+                command.success();
+            }
+        });
+
+        router.write("cancel", ActionRouter.Keys.IDS, new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                cancel(args);
+                command.success();
+            }
+        });
+
+        router.write("cancelAll", ActionRouter.Keys.ALL, new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                cancelAll();
+                command.success();
             }
         });
 
-        return true;
+        router.write("clear", ActionRouter.Keys.IDS, new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                clear(args);
+                command.success();
+            }
+        });
+
+        router.write("clearAll", ActionRouter.Keys.ALL, new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                clearAll();
+                command.success();
+            }
+        });
+
+        router.read("isPresent", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                isPresent(args.optInt(0), command);
+            }
+        });
+
+        router.read("isScheduled", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                isScheduled(args.optInt(0), command);
+            }
+        });
+
+        router.read("isTriggered", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                isTriggered(args.optInt(0), command);
+            }
+        });
+
+        router.read("getAllIds", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                getAllIds(command);
+            }
+        });
+
+        router.read("getScheduledIds", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                getScheduledIds(command);
+            }
+        });
+
+        router.read("getTriggeredIds", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                getTriggeredIds(command);
+            }
+        });
+
+        router.read("getSingle", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                getSingle(args, command);
+            }
+        });
+
+        router.read("getSingleScheduled", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                getSingleScheduled(args, command);
+            }
+        });
+
+        router.read("getSingleTriggered", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                getSingleTriggered(args, command);
+            }
+        });
+
+        router.read("getAll", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                getAll(args, command);
+            }
+        });
+
+        router.read("getScheduled", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                getScheduled(args, command);
+            }
+        });
+
+        router.read("getTriggered", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                getTriggered(args, command);
+            }
+        });
+
+        router.read("deviceready", new ActionRouter.Handler() {
+            public void handle (JSONArray args, CallbackContext command) {
+                deviceready(command);
+            }
+        });
+
+        return router;
     }
 
     /**
@@ -210,16 +318,42 @@ public class LocalNotification extends CordovaPlugin {
      *
      * @param notifications
      *      Properties for each local notification
+     * @param command
+     *      The callback context used when calling back into JavaScript.
      */
-    private void schedule (JSONArray notifications) {
-        for (int i = 0; i < notifications.length(); i++) {
-            JSONObject options = notifications.optJSONObject(i);
+    private void schedule (JSONArray notifications, CallbackContext command) {
+        List<Notification> scheduled =
+                getNotificationMgr().scheduleBatch(notifications, TriggerReceiver.class);
 
-            Notification notification =
-                    getNotificationMgr().schedule(options, TriggerReceiver.class);
+        JSONArray results = new JSONArray();
+
+        for (int i = 0; i < scheduled.size(); i++) {
+            Notification notification = scheduled.get(i);
+            JSONObject result = new JSONObject();
 
-            fireEvent("schedule", notification);
+            try {
+                if (notification == null) {
+                    JSONObject options = notifications.optJSONObject(i);
+                    Object id = options != null ? options.opt("id") : null;
+
+                    result.put("id", id != null ? id : JSONObject.NULL);
+                    result.put("success", false);
+                } else {
+                    result.put("id", notification.getId());
+                    result.put("success", true);
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+
+            results.put(result);
+
+            if (notification != null) {
+                fireEvent("schedule", notification, false);
+            }
         }
+
+        command.success(results);
     }
 
     /**
@@ -239,10 +373,23 @@ public class LocalNotification extends CordovaPlugin {
             if (notification == null)
                 continue;
 
-            fireEvent("update", notification);
+            fireEvent("update", notification, false);
         }
     }
 
+    /**
+     * Change the progress of a download notification. Doesn't fire the
+     * update event, as this happens way too often.
+     *
+     * @param id
+     *      The notification ID
+     * @param progress
+     *      The progress in percent
+     */
+    private void updateProgress (int id, int progress) {
+        getNotificationMgr().updateProgress(id, progress);
+    }
+
     /**
      * Cancel multiple local notifications.
      *
@@ -250,17 +397,10 @@ public class LocalNotification extends CordovaPlugin {
      *      Set of local notification IDs
      */
     private void cancel (JSONArray ids) {
-        for (int i = 0; i < ids.length(); i++) {
-            int id = ids.optInt(i, 0);
-
-            Notification notification =
-                    getNotificationMgr().cancel(id);
-
-            if (notification == null)
-                continue;
+        List<NotificationRecord> records =
+                getNotificationMgr().cancel(toList(ids));
 
-            fireEvent("cancel", notification);
-        }
+        fireEvent("cancel", records);
     }
 
     /**
@@ -278,17 +418,10 @@ public class LocalNotification extends CordovaPlugin {
      *      Set of local notification IDs
      */
     private void clear(JSONArray ids){
-        for (int i = 0; i < ids.length(); i++) {
-            int id = ids.optInt(i, 0);
-
-            Notification notification =
-                    getNotificationMgr().clear(id);
+        List<NotificationRecord> records =
+                getNotificationMgr().clear(toList(ids));
 
-            if (notification == null)
-                continue;
-
-            fireEvent("clear", notification);
-        }
+        fireEvent("clear", records);
     }
 
     /**
@@ -505,29 +638,108 @@ public class LocalNotification extends CordovaPlugin {
     private void getOptions (JSONArray ids, Notification.Type type,
                              CallbackContext command) {
 
-        List<JSONObject> options;
+        Iterator<NotificationRecord> records;
 
         if (ids.length() == 0) {
-            options = getNotificationMgr().getOptionsByType(type);
+            records = getNotificationMgr().iterator(type);
         } else {
-            options = getNotificationMgr().getOptionsBy(type, toList(ids));
+            records = getNotificationMgr().iterator(type, toList(ids));
         }
 
-        command.success(new JSONArray(options));
+        sendChunked(records, command);
+    }
+
+    /**
+     * Stream the options of the records in chunks to JS. Each chunk is an
+     * object with the items and a flag if more chunks follow, the callback
+     * gets kept until the last one. The chunks get assembled from the
+     * stored JSON of the records and are sent as a string to be parsed by
+     * JS, the options don't get parsed and serialized again.
+     *
+     * @param records
+     *      Iterator over the notification records
+     * @param command
+     *      The callback context used when calling back into JavaScript.
+     */
+    private void sendChunked (Iterator<NotificationRecord> records,
+                              CallbackContext command) {
+
+        StringBuilder chunk = new StringBuilder();
+
+        do {
+            int count = 0;
+
+            chunk.setLength(0);
+            chunk.append("{\"items\":[");
+
+            while (count < CHUNK_SIZE && records.hasNext()) {
+                String json = records.next().getJSON();
+
+                if (json == null || json.isEmpty())
+                    continue;
+
+                if (count++ > 0) {
+                    chunk.append(',');
+                }
+
+                chunk.append(json);
+            }
+
+            boolean more = records.hasNext();
+
+            chunk.append("],\"more\":").append(more).append('}');
+
+            PluginResult result = new PluginResult(
+                    PluginResult.Status.OK, chunk.toString());
+
+            result.setKeepCallback(more);
+
+            command.sendPluginResult(result);
+        } while (records.hasNext());
     }
 
     /**
-     * Call all pending callbacks after the deviceready event has been fired.
+     * Register the event channel and deliver all pending events. Called
+     * after the deviceready event has been fired.
+     *
+     * @param command
+     *      The callback context kept to push the events to JS.
      */
-    private static synchronized void deviceready () {
+    private static synchronized void deviceready (CallbackContext command) {
         isInBackground = false;
-        deviceready = true;
+        eventChannel   = command;
+        replayJournal  = true;
+
+        flushEvents();
+    }
+
+    /**
+     * Deliver all events which have been queued while the event channel
+     * was not available. The events get delivered in a single batch.
+     */
+    private static synchronized void flushEvents () {
+
+        if (eventChannel == null || (eventQueue.isEmpty() && !replayJournal))
+            return;
+
+        JSONArray events = eventQueue.drain();
+        JSONObject batch = new JSONObject();
 
-        for (String js : eventQueue) {
-            sendJavascript(js);
+        if (journal != null) {
+            events        = journal.replay(events, MAX_QUEUED_EVENTS);
+            replayJournal = false;
         }
 
-        eventQueue.clear();
+        if (events.length() == 0)
+            return;
+
+        try {
+            batch.put("events", events);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        send(batch);
     }
 
     /**
@@ -537,11 +749,13 @@ public class LocalNotification extends CordovaPlugin {
      *      The event name
      */
     private void fireEvent (String event) {
-        fireEvent(event, null);
+        fireEvent(event, null, false);
     }
 
     /**
-     * Fire given event on JS side. Does inform all event listeners.
+     * Fire given event on JS side. Does inform all event listeners. Called
+     * by the receivers, which might run while the app is dead, so that the
+     * event gets journaled until the event channel is available.
      *
      * @param event
      *      The event name
@@ -549,46 +763,151 @@ public class LocalNotification extends CordovaPlugin {
      *      Optional local notification to pass the id and properties.
      */
     static void fireEvent (String event, Notification notification) {
-        String state = getApplicationState();
-        String params = "\"" + state + "\"";
+        fireEvent(event, notification, true);
+    }
 
-        if (notification != null) {
-            params = notification.toString() + "," + params;
+    /**
+     * Fire given event on JS side. Does inform all event listeners.
+     *
+     * @param event
+     *      The event name
+     * @param notification
+     *      Optional local notification to pass the id and properties.
+     * @param durable
+     *      Set to true to journal the event while there is no channel
+     */
+    private static void fireEvent (String event, Notification notification,
+                                   boolean durable) {
+        JSONObject message = createEvent(event);
+
+        try {
+            if (notification != null) {
+                message.put("notification",
+                        new JSONObject(notification.toString()));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        // Only the latest trigger of a notification is of interest
+        String key = null;
+
+        if (notification != null && event.equals("trigger")) {
+            key = event + notification.getId();
         }
 
-        String js = "cordova.plugins.notification.local.core.fireEvent(" +
-                "\"" + event + "\"," + params + ")";
+        if (durable && notification != null && journal == null) {
+            journal = EventJournal.getInstance(notification.getContext());
+        }
 
-        sendJavascript(js);
+        sendEvent(key, message, durable);
     }
 
     /**
-     * Use this instead of deprecated sendJavascript
+     * Fire given event on JS side once for multiple notifications. The
+     * listeners get called for each notification.
      *
-     * @param js
-     *       JS code snippet as string
+     * @param event
+     *      The event name
+     * @param records
+     *      The local notifications to pass the id and properties
      */
-    private static synchronized void sendJavascript(final String js) {
+    private static void fireEvent (String event, List<NotificationRecord> records) {
 
-        if (!deviceready) {
-            eventQueue.add(js);
+        if (records.isEmpty())
             return;
-        }
 
-        Runnable jsLoader = new Runnable() {
-            public void run() {
-                webView.loadUrl("javascript:" + js);
+        JSONObject message      = createEvent(event);
+        JSONArray notifications = new JSONArray();
+
+        try {
+            for (NotificationRecord record : records) {
+                notifications.put(new JSONObject(record.toEventJSON()));
             }
-        };
+
+            message.put("notifications", notifications);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        sendEvent(null, message, false);
+    }
+
+    /**
+     * Message for the event channel with the event name and the current
+     * application state.
+     *
+     * @param event
+     *      The event name
+     */
+    private static JSONObject createEvent (String event) {
+        JSONObject message = new JSONObject();
+
         try {
-            Method post = webView.getClass().getMethod("post",Runnable.class);
-            post.invoke(webView,jsLoader);
-        } catch(Exception e) {
+            message.put("event", event);
+            message.put("state", getApplicationState());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return message;
+    }
+
+    /**
+     * Push the message through the event channel or queue it until the
+     * channel has been registered.
+     *
+     * @param key
+     *      Key to collapse queued events or null
+     * @param message
+     *      The event message
+     * @param durable
+     *      Set to true to journal the event while there is no channel
+     */
+    private static void sendEvent (String key, JSONObject message,
+                                   boolean durable) {
+
+        if (eventChannel == null) {
+            if (durable && journal != null) {
+                journal.append(key, message);
+            }
+
+            eventQueue.offer(key, message);
+
+            // The channel might have been registered in between
+            if (eventChannel != null) {
+                flushEvents();
+            }
 
-            ((Activity)(webView.getContext())).runOnUiThread(jsLoader);
+            return;
+        }
+
+        synchronized (LocalNotification.class) {
+            flushEvents();
+            send(message);
         }
     }
 
+    /**
+     * Push the message through the event channel.
+     *
+     * @param message
+     *      The event message or batch of messages
+     */
+    private static synchronized void send (JSONObject message) {
+        CallbackContext channel = eventChannel;
+
+        if (channel == null) {
+            eventQueue.offer(null, message);
+            return;
+        }
+
+        PluginResult result = new PluginResult(PluginResult.Status.OK, message);
+        result.setKeepCallback(true);
+
+        channel.sendPluginResult(result);
+    }
+
     /**
      * Convert JSON array of integers to List.
      *
@@ -4,12 +4,10 @@ import android.content.BroadcastReceiver;
 import android.content.Intent;
 import android.content.Context;
 
-import android.os.Bundle;
-
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import de.appplant.cordova.plugin.notification.Builder;
+import de.appplant.cordova.plugin.notification.IntentPayload;
 import de.appplant.cordova.plugin.notification.Notification;
 import de.appplant.cordova.plugin.notification.Options;
 
@@ -24,22 +22,13 @@ public class MediaControlReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        Bundle bundle  = intent.getExtras();
-        Options options;
-
-        try {
-            String data = bundle.getString("NOTIFICATION_OPTIONS");
-            JSONObject dict = new JSONObject(data);
+        JSONObject dict = IntentPayload.get(context, intent);
 
-            options = new Options(context).parse(dict);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        if (dict == null) {
             return;
         }
 
-        if (options == null) {
-            return;
-        }
+        Options options = new Options(context).parse(dict);
 
         Builder builder = new Builder(options);
         Notification notification = buildNotification(builder);
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.localnotification;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the mutations of a notification in their order of submission
+ * while mutations of other notifications can run in parallel. Each ID is
+ * assigned to one of a fixed number of single threaded lanes. Tasks which
+ * affect notifications of several lanes run as a barrier: all lanes finish
+ * their prior tasks and wait until the task is done.
+ */
+class StripedExecutor {
+
+    // Single threaded lanes
+    private final ExecutorService[] lanes;
+
+    /**
+     * Constructor
+     *
+     * @param name
+     *      Name of the threads
+     * @param count
+     *      Number of lanes
+     */
+    StripedExecutor (String name, int count) {
+        lanes = new ExecutorService[count];
+
+        for (int i = 0; i < count; i++) {
+            lanes[i] = newLane(name + "-" + (i + 1));
+        }
+    }
+
+    /**
+     * Lane of the notification ID.
+     *
+     * @param id
+     *      The notification ID
+     */
+    int laneOf (int id) {
+        return (id % lanes.length + lanes.length) % lanes.length;
+    }
+
+    /**
+     * Execute the task after all prior tasks of the same lane.
+     *
+     * @param lane
+     *      The lane, see laneOf
+     * @param task
+     *      The task to execute
+     */
+    void execute (int lane, Runnable task) {
+        lanes[lane].execute(task);
+    }
+
+    /**
+     * Execute the task after all prior tasks of all lanes. The lanes don't
+     * start later tasks until the task is done.
+     *
+     * Synchronized so that all lanes see the barriers in the same order.
+     *
+     * @param task
+     *      The task to execute
+     */
+    synchronized void executeExclusive (final Runnable task) {
+        final CountDownLatch arrived = new CountDownLatch(lanes.length);
+        final CountDownLatch done    = new CountDownLatch(1);
+
+        lanes[0].execute(new Runnable() {
+            @Override
+            public void run() {
+                arrived.countDown();
+
+                try {
+                    arrived.await();
+                    task.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+
+        for (int i = 1; i < lanes.length; i++) {
+            lanes[i].execute(new Runnable() {
+                @Override
+                public void run() {
+                    arrived.countDown();
+
+                    try {
+                        done.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Single threaded executor with a daemon thread which times out when
+     * idle.
+     *
+     * @param name
+     *      Name of the thread
+     */
+    private static ExecutorService newLane (final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread (Runnable runnable) {
+                        Thread thread = new Thread(runnable, name);
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+}
@@ -28,7 +28,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -47,24 +46,19 @@ abstract public class AbstractClickActivity extends Activity {
     public void onCreate (Bundle state) {
         super.onCreate(state);
 
-        Intent intent   = getIntent();
-        Bundle bundle   = intent.getExtras();
-        Context context = getApplicationContext();
+        Context context    = getApplicationContext();
+        JSONObject options = IntentPayload.get(context, getIntent());
 
-        try {
-            String data = bundle.getString(Options.EXTRA);
-            JSONObject options = new JSONObject(data);
+        if (options == null)
+            return;
 
-            Builder builder =
-                    new Builder(context, options);
+        Builder builder =
+                new Builder(context, options);
 
-            Notification notification =
-                    buildNotification(builder);
+        Notification notification =
+                buildNotification(builder);
 
-            onClick(notification);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        onClick(notification);
     }
 
     /**
@@ -26,12 +26,11 @@ package de.appplant.cordova.plugin.notification;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Bundle;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.Calendar;
+import java.util.List;
 
 /**
  * Abstract broadcast receiver for local notifications. Creates the
@@ -49,22 +48,19 @@ abstract public class AbstractTriggerReceiver extends BroadcastReceiver {
      */
     @Override
     public void onReceive(Context context, Intent intent) {
-        Bundle bundle  = intent.getExtras();
-        Options options;
 
-        try {
-            String data = bundle.getString(Options.EXTRA);
-            JSONObject dict = new JSONObject(data);
-
-            options = new Options(context).parse(dict);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        if (Scheduler.ACTION_DUE.equals(intent.getAction())) {
+            onDue(context);
             return;
         }
 
-        if (options == null)
+        JSONObject dict = IntentPayload.getIfScheduled(context, intent);
+
+        if (dict == null)
             return;
 
+        Options options = new Options(context).parse(dict);
+
         if (isFirstAlarmInFuture(options))
             return;
 
@@ -75,6 +71,32 @@ abstract public class AbstractTriggerReceiver extends BroadcastReceiver {
         onTrigger(notification, updated);
     }
 
+    /**
+     * Called when the single alarm of the scheduler was fired. Triggers
+     * all due notifications.
+     *
+     * @param context
+     *      Application context
+     */
+    private void onDue (Context context) {
+        Registry registry = Registry.getInstance(context);
+        List<Integer> ids = Scheduler.getInstance(context).drain(getClass());
+
+        for (int id : ids) {
+            NotificationRecord record = registry.get(id);
+            JSONObject dict = record != null ? record.toJSONObject() : null;
+
+            if (dict == null)
+                continue;
+
+            Builder builder = new Builder(context, dict);
+            Notification notification = buildNotification(builder);
+            boolean updated = notification.isUpdate(false);
+
+            onTrigger(notification, updated);
+        }
+    }
+
     /**
      * Called when a local notification was triggered.
      *
@@ -100,16 +122,15 @@ abstract public class AbstractTriggerReceiver extends BroadcastReceiver {
      * 'forgotten' reminder for that day. Therefore we ignore the event
      * if Android tries to 'catch up'.
      */
-    private Boolean isFirstAlarmInFuture (Options options) {
-        Notification notification = new Builder(options).build();
+    private boolean isFirstAlarmInFuture (Options options) {
 
-        if (!notification.isRepeating())
+        if (options.getRepeatInterval() <= 0)
             return false;
 
         Calendar now    = Calendar.getInstance();
         Calendar alarm  = Calendar.getInstance();
 
-        alarm.setTime(notification.getOptions().getTriggerDate());
+        alarm.setTimeInMillis(options.getTriggerTime());
 
         int alarmHour   = alarm.get(Calendar.HOUR_OF_DAY);
         int alarmMin    = alarm.get(Calendar.MINUTE);
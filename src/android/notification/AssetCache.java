@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Content addressed cache for copied assets like icons and sounds. Files are
+ * named after the hash of their source URI and a validator, e.g. the APK
+ * version for bundled assets. Repeated schedules with the same asset find
+ * the existing file instead of copying it again. The cache is capped in
+ * size and evicts the least recently used files. The last use is tracked
+ * apart from the files, their modification time stays the one of the
+ * content.
+ */
+class AssetCache {
+
+    // Max. size of all cached files in bytes
+    private static final long MAX_SIZE = 20 * 1024 * 1024;
+
+    // Max. age of abandoned temporary files in milliseconds
+    private static final long MAX_TMP_AGE = 60 * 60 * 1000;
+
+    // Name pattern of cached files, all other files get removed
+    private static final Pattern NAME =
+            Pattern.compile("[0-9a-f]{40}(\\.meta|\\.[A-Za-z0-9]{1,5})?");
+
+    // Pattern of supported file extensions
+    private static final Pattern EXT = Pattern.compile("\\.[A-Za-z0-9]{1,5}");
+
+    // Size of the buffer to copy the content
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    // Extension of the side files holding validators
+    static final String META = ".meta";
+
+    // Directories which have been cleaned up since process start
+    private static final Set<String> cleaned = new HashSet<String>();
+
+    // Time of the last use keyed by the absolute path of the cached files
+    private static final ConcurrentHashMap<String, Long> used =
+            new ConcurrentHashMap<String, Long>();
+
+    // The cache directory
+    private final File dir;
+
+    /**
+     * Constructor
+     *
+     * @param dir
+     *      The cache directory
+     */
+    AssetCache (File dir) {
+        this.dir = dir;
+
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+
+        synchronized (cleaned) {
+            if (cleaned.add(dir.getAbsolutePath())) {
+                trim();
+            }
+        }
+    }
+
+    /**
+     * The cached file for the key.
+     *
+     * @param key
+     *      Source URI including its validator
+     * @param ext
+     *      File extension like .png or empty string
+     *
+     * @return
+     *      null if the file isn't cached
+     */
+    File get (String key, String ext) {
+        File file = getFile(key, ext);
+
+        if (!file.exists())
+            return null;
+
+        used.put(file.getAbsolutePath(), System.currentTimeMillis());
+
+        return file;
+    }
+
+    /**
+     * Path of the cache file for the key, regardless if it exists.
+     *
+     * @param key
+     *      Source URI including its validator
+     * @param ext
+     *      File extension like .png or empty string
+     */
+    File getFile (String key, String ext) {
+        return new File(dir, hash(key) + ext);
+    }
+
+    /**
+     * Copy the content into the cache. The file gets written under a
+     * temporary name and renamed afterwards, so readers never see partial
+     * content.
+     *
+     * @param key
+     *      Source URI including its validator
+     * @param ext
+     *      File extension like .png or empty string
+     * @param in
+     *      The content to cache
+     *
+     * @return
+     *      The cached file
+     */
+    File put (String key, String ext, InputStream in) throws IOException {
+        File file = getFile(key, ext);
+        File tmp  = File.createTempFile("tmp", null, dir);
+
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+
+            try {
+                copy(in, out);
+            } finally {
+                out.close();
+            }
+
+            if (!tmp.renameTo(file))
+                throw new IOException("Cannot move " + tmp + " to " + file);
+        } finally {
+            in.close();
+
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+
+        trim();
+
+        return file;
+    }
+
+    /**
+     * Validators of the cached file like ETag and Last-Modified header.
+     *
+     * @param key
+     *      Source URI including its validator
+     *
+     * @return
+     *      Pair of ETag and Last-Modified or null if unknown
+     */
+    String[] getValidators (String key) {
+        File meta = getFile(key, META);
+
+        if (!meta.exists())
+            return null;
+
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(meta));
+
+            try {
+                String etag     = reader.readLine();
+                String modified = reader.readLine();
+
+                return new String[] {
+                        etag == null || etag.isEmpty() ? null : etag,
+                        modified == null || modified.isEmpty() ? null : modified };
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Store the validators of the cached file.
+     *
+     * @param key
+     *      Source URI including its validator
+     * @param etag
+     *      Value of the ETag header
+     * @param modified
+     *      Value of the Last-Modified header
+     */
+    void putValidators (String key, String etag, String modified) {
+        File meta = getFile(key, META);
+
+        if (etag == null && modified == null) {
+            //noinspection ResultOfMethodCallIgnored
+            meta.delete();
+            return;
+        }
+
+        try {
+            FileWriter writer = new FileWriter(meta);
+
+            try {
+                writer.write((etag != null ? etag : "") + "\n"
+                        + (modified != null ? modified : "") + "\n");
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * File extension of the path if its supported by the cache.
+     *
+     * @param path
+     *      Path or URI of the source
+     *
+     * @return
+     *      Extension like .png or empty string
+     */
+    static String getExtension (String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int index   = name.lastIndexOf('.');
+
+        if (index == -1)
+            return "";
+
+        String ext = name.substring(index);
+
+        if (ext.equalsIgnoreCase(META) || !EXT.matcher(ext).matches())
+            return "";
+
+        return ext;
+    }
+
+    /**
+     * Copy content from input stream into output stream.
+     *
+     * @param in
+     *      The input stream
+     * @param out
+     *      The output stream
+     */
+    static void copy (InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Remove unknown files like the random named copies of former versions
+     * and evict least recently used files until the cache fits its size.
+     */
+    synchronized void trim () {
+        File[] files = dir.listFiles();
+
+        if (files == null)
+            return;
+
+        long size = 0;
+        long now  = System.currentTimeMillis();
+
+        for (File file : files) {
+            String name = file.getName();
+
+            if (NAME.matcher(name).matches()) {
+                size += file.length();
+            } else if (!name.startsWith("tmp")
+                    || now - file.lastModified() > MAX_TMP_AGE) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        if (size <= MAX_SIZE)
+            return;
+
+        final Map<File, Long> lastUsed = new HashMap<File, Long>(files.length);
+
+        for (File file : files) {
+            lastUsed.put(file, getLastUsed(file));
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare (File f1, File f2) {
+                long m1 = lastUsed.get(f1);
+                long m2 = lastUsed.get(f2);
+
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            String name = file.getName();
+
+            if (size <= MAX_SIZE)
+                break;
+
+            if (!file.exists() || name.endsWith(META) || !NAME.matcher(name).matches())
+                continue;
+
+            size -= file.length();
+            used.remove(file.getAbsolutePath());
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+
+            File meta = new File(dir, name.substring(0, 40) + META);
+            size -= meta.length();
+
+            //noinspection ResultOfMethodCallIgnored
+            meta.delete();
+        }
+    }
+
+    /**
+     * Time of the last use of the file. Falls back to the time the file
+     * was written if it wasn't used since process start.
+     *
+     * @param file
+     *      The cached file
+     */
+    private static long getLastUsed (File file) {
+        Long time = used.get(file.getAbsolutePath());
+
+        return time != null ? time : file.lastModified();
+    }
+
+    /**
+     * Hex encoded SHA-1 hash of the key.
+     *
+     * @param key
+     *      Source URI including its validator
+     */
+    private static String hash (String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(40);
+
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                   .append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
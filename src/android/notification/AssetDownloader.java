@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads remote assets like icons and sounds into the asset cache.
+ * Requests for the same URL share one download, which runs on a small
+ * bounded worker pool with connect and read timeouts. Cached files get
+ * revalidated with their ETag or Last-Modified header. Callers never wait
+ * for a download, they get informed once it's done. Doesn't depend on the
+ * Android framework, so that it can run against a local HTTP server.
+ */
+class AssetDownloader {
+
+    // Max. number of parallel downloads
+    private static final int MAX_THREADS = 3;
+
+    // Timeout to establish the connection in milliseconds
+    static final int CONNECT_TIMEOUT = 5000;
+
+    // Timeout to wait for data in milliseconds
+    static final int READ_TIMEOUT = 10000;
+
+    // Period in which a revalidated file counts as fresh in milliseconds
+    static final long FRESH_PERIOD = 5 * 60 * 1000;
+
+    // The single instance per process
+    private static AssetDownloader instance;
+
+    // Worker pool for all downloads
+    private final ThreadPoolExecutor executor;
+
+    // Running downloads keyed by URL
+    private final ConcurrentHashMap<String, Download> inFlight =
+            new ConcurrentHashMap<String, Download>();
+
+    // Time of the last successful validation keyed by URL
+    private final ConcurrentHashMap<String, Long> validated =
+            new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Running or completed download, which informs its listeners once
+     * it's done.
+     */
+    static class Download extends FutureTask<File> {
+
+        // Listeners to run once the download is done
+        private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+        // If the download is done
+        private boolean finished = false;
+
+        Download (Callable<File> callable) {
+            super(callable);
+        }
+
+        /**
+         * Run the listener once the download is done, regardless if it
+         * succeeded. Runs right away if it's done already, otherwise on
+         * the worker thread.
+         *
+         * @param listener
+         *      The listener to run
+         */
+        void addListener (Runnable listener) {
+            synchronized (listeners) {
+                if (!finished) {
+                    listeners.add(listener);
+                    return;
+                }
+            }
+
+            listener.run();
+        }
+
+        @Override
+        protected void done () {
+            List<Runnable> list;
+
+            synchronized (listeners) {
+                finished = true;
+                list     = new ArrayList<Runnable>(listeners);
+                listeners.clear();
+            }
+
+            for (Runnable listener : list) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param threads
+     *      Max. number of parallel downloads
+     */
+    AssetDownloader (int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 30,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread (Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "LocalNotification-Download-" + count.incrementAndGet());
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Static method to retrieve the shared instance.
+     */
+    static synchronized AssetDownloader getInstance () {
+        if (instance == null) {
+            instance = new AssetDownloader(MAX_THREADS);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Download the file in background unless a download of the same URL
+     * is already running.
+     *
+     * @param cache
+     *      The cache to store the file
+     * @param url
+     *      Remote address
+     * @param ext
+     *      File extension like .png or empty string
+     *
+     * @return
+     *      The download of the cached file
+     */
+    Download download (final AssetCache cache, final String url,
+                       final String ext) {
+
+        Download running = inFlight.get(url);
+
+        if (running != null)
+            return running;
+
+        Download task = new Download(new Callable<File>() {
+            @Override
+            public File call () throws IOException {
+                try {
+                    return fetch(cache, url, ext);
+                } finally {
+                    inFlight.remove(url);
+                }
+            }
+        });
+
+        running = inFlight.putIfAbsent(url, task);
+
+        if (running != null)
+            return running;
+
+        executor.execute(task);
+
+        return task;
+    }
+
+    /**
+     * Download the file unless the cached copy is still valid.
+     *
+     * @param cache
+     *      The cache to store the file
+     * @param url
+     *      Remote address
+     * @param ext
+     *      File extension like .png or empty string
+     */
+    private File fetch (AssetCache cache, String url, String ext)
+            throws IOException {
+
+        File file = cache.get(url, ext);
+        Long time = validated.get(url);
+        long now  = System.currentTimeMillis();
+
+        if (file != null && time != null && now - time < FRESH_PERIOD)
+            return file;
+
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(url).openConnection();
+
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+
+            String[] validators = file != null ? cache.getValidators(url) : null;
+
+            if (validators != null) {
+                if (validators[0] != null) {
+                    connection.setRequestProperty("If-None-Match", validators[0]);
+                }
+                if (validators[1] != null) {
+                    connection.setRequestProperty("If-Modified-Since", validators[1]);
+                }
+            }
+
+            int status = connection.getResponseCode();
+
+            if (file != null && status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                validated.put(url, now);
+                return file;
+            }
+
+            if (status != HttpURLConnection.HTTP_OK) {
+                if (file != null)
+                    return file;
+
+                throw new IOException("HTTP " + status + " for " + url);
+            }
+
+            file = cache.put(url, ext, connection.getInputStream());
+
+            cache.putValidators(url,
+                    connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified"));
+
+            validated.put(url, now);
+
+            return file;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+}
@@ -23,26 +23,26 @@
 
 package de.appplant.cordova.plugin.notification;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.content.res.AssetManager;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.media.RingtoneManager;
 import android.net.Uri;
-import android.os.StrictMode;
 import android.util.Log;
+import android.util.LruCache;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.UUID;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Util class to map unified asset URIs to native URIs. URIs like file:///
@@ -58,10 +58,42 @@ class AssetUtil {
     // Placeholder URI for default sound
     private static final String DEFAULT_SOUND = "res://platform_default";
 
+    // Decoded icons keyed by their URI and target size, bounded by byte count
+    private static final LruCache<String, Bitmap> bitmaps =
+            new LruCache<String, Bitmap>(getBitmapCacheSize()) {
+                @Override
+                protected int sizeOf (String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+
+    // If the cache listens for memory pressure
+    private static boolean trimRegistered = false;
+
+    // Version of the installed APK
+    private static String appVersion;
+
+    // Resolved drawable resource IDs of the app or android package keyed
+    // by path, 0 if not found
+    private static final ConcurrentHashMap<String, Integer> drawables =
+            new ConcurrentHashMap<String, Integer>();
+
+    // Resolved drawable resource IDs keyed by package name and path as
+    // "pkg:path", package names can't contain a colon. 0 if not found.
+    private static final ConcurrentHashMap<String, Integer> pkgDrawables =
+            new ConcurrentHashMap<String, Integer>();
+
     // Ref to the context passed through the constructor to access the
     // resources and app directory.
     private final Context context;
 
+    // Already resolved paths, shared by all options parsed with this instance
+    private final Map<String, Uri> resolved = new HashMap<String, Uri>();
+
+    // Downloads of remote paths which weren't cached yet when resolved
+    private final Map<String, AssetDownloader.Download> downloads =
+            new HashMap<String, AssetDownloader.Download>();
+
     /**
      * Constructor
      *
@@ -70,6 +102,7 @@ class AssetUtil {
      */
     private AssetUtil(Context context) {
         this.context = context;
+        registerTrimCallback(context);
     }
 
     /**
@@ -108,6 +141,40 @@ class AssetUtil {
      *      The given path
      */
     Uri parse (String path) {
+        Uri uri = resolved.get(path);
+
+        if (uri == null) {
+            uri = resolve(path);
+            resolved.put(path, uri);
+        }
+
+        return uri;
+    }
+
+    /**
+     * The running download of the remote path, if the path has been
+     * resolved to the default because the file wasn't cached yet.
+     *
+     * @param path
+     *      The given path
+     *
+     * @return
+     *      null if the path doesn't wait for a download
+     */
+    AssetDownloader.Download getDownload (String path) {
+        AssetDownloader.Download download =
+                path != null ? downloads.get(path) : null;
+
+        return download != null && !download.isDone() ? download : null;
+    }
+
+    /**
+     * Map the path to a native URI. Copies the file if necessary.
+     *
+     * @param path
+     *      The given path
+     */
+    private Uri resolve (String path) {
 
         if (path.startsWith("res:")) {
             return getUriForResourcePath(path);
@@ -153,24 +220,24 @@ class AssetUtil {
      *      URI pointing to the given path
      */
     private Uri getUriFromAsset(String path) {
-        String resPath  = path.replaceFirst("file:/", "www");
-        String fileName = resPath.substring(resPath.lastIndexOf('/') + 1);
-        File file       = getTmpFile(fileName);
+        String resPath = path.replaceFirst("file:/", "www");
+        String ext     = AssetCache.getExtension(resPath);
+        String key     = "asset:" + resPath + "@" + getAppVersion();
+        AssetCache cache = getCache();
 
-        if (file == null) {
+        if (cache == null) {
             Log.e("Asset", "Missing external cache dir");
             return Uri.EMPTY;
         }
 
-        try {
-            AssetManager assets = context.getAssets();
-            FileOutputStream outStream = new FileOutputStream(file);
-            InputStream inputStream = assets.open(resPath);
+        File file = cache.get(key, ext);
 
-            copyFile(inputStream, outStream);
+        if (file != null)
+            return Uri.fromFile(file);
 
-            outStream.flush();
-            outStream.close();
+        try {
+            AssetManager assets = context.getAssets();
+            file = cache.put(key, ext, assets.open(resPath));
 
             return Uri.fromFile(file);
 
@@ -194,26 +261,27 @@ class AssetUtil {
     private Uri getUriForResourcePath(String path) {
         String resPath = path.replaceFirst("res://", "");
         int resId      = getResIdForDrawable(resPath);
-        File file      = getTmpFile();
+        AssetCache cache = getCache();
 
         if (resId == 0) {
             Log.e("Asset", "File not found: " + resPath);
             return Uri.EMPTY;
         }
 
-        if (file == null) {
+        if (cache == null) {
             Log.e("Asset", "Missing external cache dir");
             return Uri.EMPTY;
         }
 
+        String key = "res:" + resId + "@" + getAppVersion();
+        File file  = cache.get(key, "");
+
+        if (file != null)
+            return Uri.fromFile(file);
+
         try {
             Resources res = context.getResources();
-            FileOutputStream outStream = new FileOutputStream(file);
-            InputStream inputStream = res.openRawResource(resId);
-            copyFile(inputStream, outStream);
-
-            outStream.flush();
-            outStream.close();
+            file = cache.put(key, "", res.openRawResource(resId));
 
             return Uri.fromFile(file);
 
@@ -225,109 +293,85 @@ class AssetUtil {
     }
 
     /**
-     * Uri from remote located content.
+     * Uri from remote located content. Doesn't wait for the download, the
+     * cached file gets used right away and revalidated in background. An
+     * uncached file resolves to an empty URI, i.e. the default, until its
+     * download is done.
      *
      * @param path
      *      Remote address
      *
      * @return
-     *      Uri of the downloaded file
+     *      Uri of the cached file
      */
     private Uri getUriFromRemote(String path) {
-        File file = getTmpFile();
+        String urlPath   = Uri.parse(path).getPath();
+        String ext       = urlPath != null ? AssetCache.getExtension(urlPath) : "";
+        AssetCache cache = getCache();
 
-        if (file == null) {
+        if (cache == null) {
             Log.e("Asset", "Missing external cache dir");
             return Uri.EMPTY;
         }
 
-        try {
-            URL url = new URL(path);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-            StrictMode.ThreadPolicy policy =
-                    new StrictMode.ThreadPolicy.Builder().permitAll().build();
-
-            StrictMode.setThreadPolicy(policy);
-
-            connection.setRequestProperty("Connection", "close");
-            connection.setConnectTimeout(5000);
-            connection.connect();
-
-            InputStream input = connection.getInputStream();
-            FileOutputStream outStream = new FileOutputStream(file);
+        AssetDownloader.Download download =
+                AssetDownloader.getInstance().download(cache, path, ext);
 
-            copyFile(input, outStream);
-
-            outStream.flush();
-            outStream.close();
+        File file = cache.get(path, ext);
 
+        if (file != null)
             return Uri.fromFile(file);
 
-        } catch (MalformedURLException e) {
-            Log.e("Asset", "Incorrect URL");
-            e.printStackTrace();
-        } catch (FileNotFoundException e) {
-            Log.e("Asset", "Failed to create new File from HTTP Content");
-            e.printStackTrace();
-        } catch (IOException e) {
-            Log.e("Asset", "No Input can be created from http Stream");
-            e.printStackTrace();
-        }
+        downloads.put(path, download);
 
         return Uri.EMPTY;
     }
 
     /**
-     * Copy content from input stream into output stream.
-     *
-     * @param in
-     *      The input stream
-     * @param out
-     *      The output stream
-     */
-    private void copyFile(InputStream in, OutputStream out) throws IOException {
-        byte[] buffer = new byte[1024];
-        int read;
-
-        while ((read = in.read(buffer)) != -1) {
-            out.write(buffer, 0, read);
-        }
-    }
-
-    /**
-     * Resource ID for drawable.
+     * Resource ID for drawable. Looks into the app package first and falls
+     * back to the android package.
      *
      * @param resPath
      *      Resource path as string
      */
     int getResIdForDrawable(String resPath) {
+        Integer cached = drawables.get(resPath);
+
+        if (cached != null)
+            return cached;
+
         int resId = getResIdForDrawable(getPkgName(), resPath);
 
         if (resId == 0) {
             resId = getResIdForDrawable("android", resPath);
         }
 
+        drawables.put(resPath, resId);
+
         return resId;
     }
 
     /**
-     * Resource ID for drawable.
+     * Resource ID for drawable. Resolved names are cached, including those
+     * which don't exist.
      *
-     * @param clsName
+     * @param pkgName
      *      Relative package or global android name space
      * @param resPath
      *      Resource path as string
      */
-    int getResIdForDrawable(String clsName, String resPath) {
-        String drawable = getBaseName(resPath);
-        int resId = 0;
+    int getResIdForDrawable(String pkgName, String resPath) {
+        String key    = pkgName + ":" + resPath;
+        Integer resId = pkgDrawables.get(key);
 
-        try {
-            Class<?> cls  = Class.forName(clsName + ".R$drawable");
+        if (resId == null) {
+            String drawable = getBaseName(resPath);
 
-            resId = (Integer) cls.getDeclaredField(drawable).get(Integer.class);
-        } catch (Exception ignore) {}
+            resId = drawable.isEmpty() ? 0 : context.getResources()
+                    .getIdentifier(drawable, "drawable", pkgName);
+
+            pkgDrawables.put(key, resId);
+        }
 
         return resId;
     }
@@ -352,19 +396,209 @@ class AssetUtil {
             iconId = android.R.drawable.screen_background_dark_transparent;
         }
 
-        return BitmapFactory.decodeResource(res, iconId);
+        String key = "drawable:" + iconId + "@" + getLargeIconWidth()
+                + "x" + getLargeIconHeight();
+
+        Bitmap bmp = bitmaps.get(key);
+
+        if (bmp != null)
+            return bmp;
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(res, iconId, opts);
+
+        prepareDecodeOptions(opts);
+        bmp = scaleToLargeIcon(BitmapFactory.decodeResource(res, iconId, opts));
+
+        if (bmp != null) {
+            bitmaps.put(key, bmp);
+        }
+
+        return bmp;
     }
 
     /**
-     * Convert URI to Bitmap.
+     * Convert URI to Bitmap. The image gets downsampled to the size of the
+     * large icon and decoded icons are cached, so repeated builds of the
+     * same notification don't decode the icon again.
      *
      * @param uri
      *      Internal image URI
      */
     Bitmap getIconFromUri (Uri uri) throws IOException {
+        String key = getBitmapKey(uri);
+        Bitmap bmp = bitmaps.get(key);
+
+        if (bmp != null)
+            return bmp;
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
         InputStream input = context.getContentResolver().openInputStream(uri);
 
-        return BitmapFactory.decodeStream(input);
+        // First pass only reads the dimensions of the image
+        opts.inJustDecodeBounds = true;
+
+        try {
+            BitmapFactory.decodeStream(input, null, opts);
+        } finally {
+            input.close();
+        }
+
+        prepareDecodeOptions(opts);
+        input = context.getContentResolver().openInputStream(uri);
+
+        try {
+            bmp = scaleToLargeIcon(BitmapFactory.decodeStream(input, null, opts));
+        } finally {
+            input.close();
+        }
+
+        if (bmp != null) {
+            bitmaps.put(key, bmp);
+        }
+
+        return bmp;
+    }
+
+    /**
+     * Turn the options of the bounds pass into options for the actual
+     * decoding. The sample size is the largest power of two which keeps
+     * the image at least as large as the large icon.
+     *
+     * @param opts
+     *      Options with the dimensions of the image
+     */
+    private void prepareDecodeOptions (BitmapFactory.Options opts) {
+        int width  = getLargeIconWidth();
+        int height = getLargeIconHeight();
+        int sample = 1;
+
+        if (opts.outWidth > 0 && opts.outHeight > 0) {
+            while (opts.outWidth / (sample * 2) >= width
+                    && opts.outHeight / (sample * 2) >= height) {
+                sample *= 2;
+            }
+        }
+
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize       = sample;
+        opts.inPreferredConfig  = Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Scale the bitmap down to fit into the large icon while keeping its
+     * aspect ratio. Smaller bitmaps are returned as they are.
+     *
+     * @param bmp
+     *      The decoded bitmap
+     */
+    private Bitmap scaleToLargeIcon (Bitmap bmp) {
+
+        if (bmp == null)
+            return null;
+
+        int width  = getLargeIconWidth();
+        int height = getLargeIconHeight();
+
+        if (bmp.getWidth() <= width && bmp.getHeight() <= height)
+            return bmp;
+
+        float scale = Math.min((float) width / bmp.getWidth(),
+                (float) height / bmp.getHeight());
+
+        Bitmap scaled = Bitmap.createScaledBitmap(bmp,
+                Math.max(1, Math.round(bmp.getWidth() * scale)),
+                Math.max(1, Math.round(bmp.getHeight() * scale)), true);
+
+        if (scaled != bmp) {
+            bmp.recycle();
+        }
+
+        return scaled;
+    }
+
+    /**
+     * Cache key for the icon which depends on the URI, the size of the
+     * large icon and for files on their last modification.
+     *
+     * @param uri
+     *      Internal image URI
+     */
+    private String getBitmapKey (Uri uri) {
+        StringBuilder key = new StringBuilder(uri.toString());
+
+        key.append('@')
+           .append(getLargeIconWidth())
+           .append('x')
+           .append(getLargeIconHeight());
+
+        if ("file".equals(uri.getScheme())) {
+            key.append('#').append(new File(uri.getPath()).lastModified());
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Width of the large icon in pixels.
+     */
+    private int getLargeIconWidth () {
+        return context.getResources().getDimensionPixelSize(
+                android.R.dimen.notification_large_icon_width);
+    }
+
+    /**
+     * Height of the large icon in pixels.
+     */
+    private int getLargeIconHeight () {
+        return context.getResources().getDimensionPixelSize(
+                android.R.dimen.notification_large_icon_height);
+    }
+
+    /**
+     * Max. size of the bitmap cache in bytes.
+     */
+    private static int getBitmapCacheSize () {
+        long max = Runtime.getRuntime().maxMemory() / 16;
+
+        return (int) Math.min(max, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Trim the bitmap cache if the system runs low on memory.
+     *
+     * @param context
+     *      Application context
+     */
+    private static synchronized void registerTrimCallback (Context context) {
+
+        if (trimRegistered)
+            return;
+
+        trimRegistered = true;
+
+        context.getApplicationContext().registerComponentCallbacks(
+                new ComponentCallbacks2() {
+                    @Override
+                    public void onTrimMemory (int level) {
+                        if (level >= TRIM_MEMORY_MODERATE
+                                || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                            bitmaps.evictAll();
+                        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                            bitmaps.trimToSize(bitmaps.size() / 2);
+                        }
+                    }
+
+                    @Override
+                    public void onConfigurationChanged (Configuration config) {}
+
+                    @Override
+                    public void onLowMemory () {
+                        bitmaps.evictAll();
+                    }
+                });
     }
 
     /**
@@ -388,39 +622,40 @@ class AssetUtil {
     }
 
     /**
-     * Returns a file located under the external cache dir of that app.
+     * Cache for copied assets located under the external cache dir of
+     * that app.
      *
      * @return
-     *      File with a random UUID name
+     *      null if there is no external cache dir
      */
-    private File getTmpFile () {
-        // If random UUID is not be enough see
-        // https://github.com/LukePulverenti/cordova-plugin-local-notifications/blob/267170db14044cbeff6f4c3c62d9b766b7a1dd62/src/android/notification/AssetUtil.java#L255
-        return getTmpFile(UUID.randomUUID().toString());
+    private AssetCache getCache () {
+        File dir = context.getExternalCacheDir();
+
+        if (dir == null)
+            return null;
+
+        return new AssetCache(new File(dir.toString() + STORAGE_FOLDER));
     }
 
     /**
-     * Returns a file located under the external cache dir of that app.
-     *
-     * @param name
-     *      The name of the file
-     * @return
-     *      File with the provided name
+     * Version of the installed APK, which invalidates cached copies of
+     * bundled assets and resources after an update.
      */
-    private File getTmpFile (String name) {
-        File dir = context.getExternalCacheDir();
+    private String getAppVersion () {
 
-        if (dir == null) {
-            Log.e("Asset", "Missing external cache dir");
-            return null;
-        }
+        if (appVersion != null)
+            return appVersion;
 
-        String storage  = dir.toString() + STORAGE_FOLDER;
+        try {
+            PackageInfo info = context.getPackageManager()
+                    .getPackageInfo(getPkgName(), 0);
 
-        //noinspection ResultOfMethodCallIgnored
-        new File(storage).mkdir();
+            appVersion = info.versionCode + "-" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            appVersion = "0";
+        }
 
-        return new File(storage, name);
+        return appVersion;
     }
 
     /**
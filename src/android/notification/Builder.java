@@ -287,7 +287,7 @@ public class Builder {
     private static NotificationCompat.Action generateAction(Context context, Options options, int icon, String title, String intentAction ) {
         Intent intent = new Intent(context, MediaControlReceiver.class);
         intent.setAction(intentAction);
-        intent.putExtra(Options.EXTRA, options.toString());
+        IntentPayload.put(context, intent, options);
         //PendingIntent pendingIntent = PendingIntent.getService(context, 1, intent, 0);
         // (Context context, int requestCode, Intent intent, int flags)
         int requestCode = new Random().nextInt();
@@ -309,8 +309,9 @@ public class Builder {
             return;
 
         Intent intent = new Intent(context, clearReceiver)
-                .setAction(options.getIdStr())
-                .putExtra(Options.EXTRA, options.toString());
+                .setAction(options.getIdStr());
+
+        IntentPayload.put(context, intent, options);
 
         PendingIntent deleteIntent = PendingIntent.getBroadcast(
                 context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
@@ -331,9 +332,10 @@ public class Builder {
             return;
 
         Intent intent = new Intent(context, clickActivity)
-                .putExtra(Options.EXTRA, options.toString())
                 .setFlags(Intent.FLAG_ACTIVITY_NO_HISTORY);
 
+        IntentPayload.put(context, intent, options);
+
         int reqCode = new Random().nextInt();
 
         PendingIntent contentIntent = PendingIntent.getActivity(
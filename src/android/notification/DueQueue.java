@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Pending notifications of the scheduler ordered by their next due time.
+ * Gets build from the persisted notifications and the time up to which
+ * the former process did drain the due entries.
+ */
+class DueQueue {
+
+    // Entries ordered by their due time
+    private final PriorityQueue<Entry> queue;
+
+    /**
+     * Pending notification with its next due time.
+     */
+    static class Entry implements Comparable<Entry> {
+
+        // Notification ID
+        final int id;
+
+        // Next due time in milliseconds
+        final long due;
+
+        Entry (int id, long due) {
+            this.id  = id;
+            this.due = due;
+        }
+
+        @Override
+        public int compareTo (Entry other) {
+            return due < other.due ? -1 : (due == other.due ? 0 : 1);
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity
+     *      Initial capacity
+     */
+    DueQueue (int capacity) {
+        queue = new PriorityQueue<Entry>(Math.max(capacity, 1));
+    }
+
+    /**
+     * Queue of the notifications which are not drained yet. Entries due
+     * after the drained time but already in the past are kept, the next
+     * drain delivers them.
+     *
+     * @param records
+     *      All persisted notifications
+     * @param drained
+     *      Time up to which all due entries have been drained
+     */
+    static DueQueue build (List<NotificationRecord> records, long drained) {
+        DueQueue queue = new DueQueue(records.size());
+
+        for (NotificationRecord record : records) {
+            long trigger  = record.getTriggerTime();
+            long interval = record.getRepeatInterval();
+
+            if (record.isShownImmediately())
+                continue;
+
+            if (interval > 0) {
+                queue.add(record.getId(),
+                        getNextDue(trigger, interval, drained + 1));
+            } else if (trigger > drained) {
+                queue.add(record.getId(), trigger);
+            }
+        }
+
+        return queue;
+    }
+
+    /**
+     * Queue the notification.
+     *
+     * @param id
+     *      Notification ID
+     * @param due
+     *      Due time in milliseconds
+     */
+    void add (int id, long due) {
+        queue.add(new Entry(id, due));
+    }
+
+    /**
+     * Remove the entry of the notification.
+     *
+     * @param id
+     *      Notification ID
+     *
+     * @return
+     *      true if the queue did contain the notification
+     */
+    boolean remove (int id) {
+        for (Entry entry : queue) {
+            if (entry.id == id) {
+                return queue.remove(entry);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The entry due next or null if the queue is empty.
+     */
+    Entry peek () {
+        return queue.peek();
+    }
+
+    /**
+     * Take the entry due next.
+     *
+     * @return
+     *      null if the queue is empty
+     */
+    Entry poll () {
+        return queue.poll();
+    }
+
+    /**
+     * If no notification is pending.
+     */
+    boolean isEmpty () {
+        return queue.isEmpty();
+    }
+
+    /**
+     * First due time of a repeating notification not before the given time.
+     *
+     * @param trigger
+     *      First trigger time in milliseconds
+     * @param interval
+     *      Repeat interval in milliseconds
+     * @param since
+     *      Lower bound in milliseconds
+     */
+    static long getNextDue (long trigger, long interval, long since) {
+        if (trigger >= since)
+            return trigger;
+
+        long times = (since - trigger + interval - 1) / interval;
+
+        return trigger + times * interval;
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Payload of the intents registered with the alarm and notification
+ * manager. By default the intents embed the encoded options and the ID,
+ * which serves to look up the options if they can't be decoded, e.g. once
+ * the encoding has changed with an update of the app. In ID-only
+ * mode they carry just the notification ID and a stamp of its schedule,
+ * the receivers then look up the current options from the registry.
+ * Receivers accept both forms, so that pending intents survive a change
+ * of the mode.
+ */
+public final class IntentPayload {
+
+    // Key name for the binary encoded options
+    static final String EXTRA_OPTIONS = "NOTIFICATION_OPTIONS_BIN";
+
+    // Key name for the notification ID
+    static final String EXTRA_ID = "NOTIFICATION_ID";
+
+    // Key name for the schedule stamp
+    static final String EXTRA_STAMP = "NOTIFICATION_STAMP";
+
+    // Key for private preferences
+    private static final String PREF_KEY = "LocalNotification.Intents";
+
+    // Preference key of the mode flag
+    private static final String KEY_ID_ONLY = "idOnly";
+
+    // Cached mode flag, read from the preferences on first use
+    private static volatile Boolean idOnly;
+
+    /**
+     * Static helper class.
+     */
+    private IntentPayload () {}
+
+    /**
+     * If the intents carry only the notification ID.
+     *
+     * @param context
+     *      Application context
+     */
+    static boolean isIdOnly (Context context) {
+        Boolean flag = idOnly;
+
+        if (flag == null) {
+            flag   = getPrefs(context).getBoolean(KEY_ID_ONLY, false);
+            idOnly = flag;
+        }
+
+        return flag;
+    }
+
+    /**
+     * Turn the ID-only mode on or off. Applies to intents created from now
+     * on, already registered ones stay valid.
+     *
+     * @param context
+     *      Application context
+     * @param enabled
+     *      true to put only the ID into the intents
+     */
+    public static void setIdOnly (Context context, boolean enabled) {
+        if (isIdOnly(context) == enabled)
+            return;
+
+        getPrefs(context).edit().putBoolean(KEY_ID_ONLY, enabled).commit();
+        idOnly = enabled;
+    }
+
+    /**
+     * Put the payload for the notification into the intent.
+     *
+     * @param context
+     *      Application context
+     * @param intent
+     *      The intent to fill
+     * @param options
+     *      The notification options
+     */
+    static Intent put (Context context, Intent intent, Options options) {
+
+        if (!isIdOnly(context))
+            return intent
+                    .putExtra(EXTRA_OPTIONS, options.toBytes())
+                    .putExtra(EXTRA_ID, options.getId().intValue());
+
+        return intent
+                .putExtra(EXTRA_ID, options.getId().intValue())
+                .putExtra(EXTRA_STAMP, getStamp(options.getTriggerTime(),
+                        options.getRepeatInterval()));
+    }
+
+    /**
+     * Current options of the notification the intent refers to.
+     *
+     * @param context
+     *      Application context
+     * @param intent
+     *      The received intent
+     *
+     * @return
+     *      null if the notification doesn't exist anymore
+     */
+    public static JSONObject get (Context context, Intent intent) {
+        return get(context, intent, false);
+    }
+
+    /**
+     * Current options of the notification the alarm intent refers to.
+     * Ignores alarms of a former schedule of the notification.
+     *
+     * @param context
+     *      Application context
+     * @param intent
+     *      The received alarm intent
+     *
+     * @return
+     *      null if the notification doesn't exist anymore or got
+     *      rescheduled
+     */
+    static JSONObject getIfScheduled (Context context, Intent intent) {
+        return get(context, intent, true);
+    }
+
+    /**
+     * Current options of the notification the intent refers to.
+     *
+     * @param context
+     *      Application context
+     * @param intent
+     *      The received intent
+     * @param checkStamp
+     *      Set to true to ignore intents of a former schedule
+     */
+    private static JSONObject get (Context context, Intent intent,
+                                   boolean checkStamp) {
+
+        if (!intent.hasExtra(EXTRA_STAMP)) {
+            JSONObject dict = getOptions(intent);
+
+            if (dict != null || !intent.hasExtra(EXTRA_ID))
+                return dict;
+
+            // Encoded by another version, there is no stamp to compare
+            checkStamp = false;
+        }
+
+        int id = intent.getIntExtra(EXTRA_ID, 0);
+        NotificationRecord record = Registry.getInstance(context).get(id);
+
+        if (record == null)
+            return null;
+
+        if (checkStamp) {
+            int stamp = getStamp(record.getTriggerTime(),
+                    record.getRepeatInterval());
+
+            if (stamp != intent.getIntExtra(EXTRA_STAMP, stamp))
+                return null;
+        }
+
+        return record.toJSONObject();
+    }
+
+    /**
+     * Read the embedded options from the intent. Falls back to the JSON
+     * text of intents created by former versions.
+     *
+     * @param intent
+     *      The received intent
+     *
+     * @return
+     *      null if the intent has no or invalid options
+     */
+    private static JSONObject getOptions (Intent intent) {
+        byte[] data = intent.getByteArrayExtra(EXTRA_OPTIONS);
+
+        try {
+            if (data != null)
+                return OptionsCodec.decode(data);
+
+            String json = intent.getStringExtra(Options.EXTRA);
+
+            return json != null ? new JSONObject(json) : null;
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Stamp of the schedule to detect outdated alarms.
+     *
+     * @param trigger
+     *      Trigger time in milliseconds
+     * @param interval
+     *      Repeat interval in milliseconds
+     */
+    static int getStamp (long trigger, long interval) {
+        long hash = trigger * 31 + interval;
+
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Shared private preferences for the mode flag.
+     *
+     * @param context
+     *      Application context
+     */
+    private static SharedPreferences getPrefs (Context context) {
+        return context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    }
+
+}
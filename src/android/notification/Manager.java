@@ -23,20 +23,17 @@
 
 package de.appplant.cordova.plugin.notification;
 
-import android.app.NotificationManager;
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.util.SparseArray;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import static de.appplant.cordova.plugin.notification.Notification.PREF_KEY;
+import java.util.NoSuchElementException;
 
 /**
  * Central way to access all or single local notifications set by specific
@@ -45,6 +42,10 @@ import static de.appplant.cordova.plugin.notification.Notification.PREF_KEY;
  */
 public class Manager {
 
+    // Built download notifications kept in memory for progress updates
+    private static final SparseArray<Notification> live =
+            new SparseArray<Notification>();
+
     // Context passed through constructor and used for notification builder.
     private Context context;
 
@@ -89,23 +90,156 @@ public class Manager {
      *      Receiver to handle the trigger event
      */
     public Notification schedule (Options options, Class<?> receiver) {
-        Notification notification = new Builder(options)
-                .setTriggerReceiver(receiver)
-                .build();
-
         String type = options.getType();
 
         if(type.equals("download") || type.equals("media")) {
+            Notification notification = new Builder(options)
+                    .setTriggerReceiver(receiver)
+                    .build();
+
             notification.persist();
-            notification.show();
-        }
-        else {
-            notification.schedule();
+            notification.dispatch();
+            setLive(options.getId(), notification);
+            return notification;
         }
 
+        // The platform notification gets build once the alarm fires
+        Notification notification =
+                new Notification(context, options, null, receiver);
+
+        notification.schedule();
+
         return notification;
     }
 
+    /**
+     * Schedule multiple local notifications specified by JSON objects.
+     * Equal asset paths get resolved only once for the whole batch.
+     *
+     * @param notifications
+     *      JSON objects with set of options
+     * @param receiver
+     *      Receiver to handle the trigger event
+     *
+     * @return
+     *      Scheduled notification or null for each item of the batch
+     */
+    public List<Notification> scheduleBatch (JSONArray notifications,
+                                             Class<?> receiver) {
+
+        AssetUtil assets = AssetUtil.getInstance(context);
+        List<Options> list = new ArrayList<Options>(notifications.length());
+
+        for (int i = 0; i < notifications.length(); i++) {
+            JSONObject dict = notifications.optJSONObject(i);
+
+            list.add(dict == null ? null : new Options(context, assets).parse(dict));
+        }
+
+        return scheduleBatch(list, receiver);
+    }
+
+    /**
+     * Schedule multiple local notifications specified by options objects.
+     * All notifications get persisted within one write before their alarms
+     * are registered.
+     *
+     * @param options
+     *      Set of notification options
+     * @param receiver
+     *      Receiver to handle the trigger event
+     *
+     * @return
+     *      Scheduled notification or null for each item of the batch
+     */
+    public List<Notification> scheduleBatch (List<Options> options,
+                                             Class<?> receiver) {
+
+        List<Notification> notifications = new ArrayList<Notification>(options.size());
+        List<Options> persistable = new ArrayList<Options>(options.size());
+
+        for (Options opts : options) {
+            if (opts != null) {
+                persistable.add(opts);
+            }
+        }
+
+        getRegistry().putAll(persistable);
+
+        for (Options opts : options) {
+            Notification notification = null;
+
+            if (opts != null) {
+                notification = scheduleAlarm(opts, receiver);
+            }
+
+            notifications.add(notification);
+        }
+
+        return notifications;
+    }
+
+    /**
+     * Register the alarm or show the notification of already persisted
+     * options, e.g. of a batch item or an update.
+     *
+     * @param options
+     *      Set of notification options
+     * @param receiver
+     *      Receiver to handle the trigger event
+     *
+     * @return
+     *      null if the alarm could not be registered
+     */
+    private Notification scheduleAlarm (Options options, Class<?> receiver) {
+        String type = options.getType();
+
+        try {
+            if (type.equals("download") || type.equals("media")) {
+                Notification notification = new Builder(options)
+                        .setTriggerReceiver(receiver)
+                        .build();
+
+                notification.dispatch();
+                setLive(options.getId(), notification);
+                return notification;
+            }
+
+            // No need to build the platform notification to set the alarm
+            Notification notification =
+                    new Notification(context, options, null, receiver);
+
+            notification.scheduleAlarm();
+            return notification;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            getRegistry().remove(options.getId());
+        }
+
+        return null;
+    }
+
+    /**
+     * Release the built notification kept for progress updates, e.g. once
+     * it got cleared or canceled.
+     *
+     * @param id
+     *      The notification ID
+     */
+    static void releaseLive (int id) {
+        setLive(id, null);
+    }
+
+    /**
+     * If it's a download notification.
+     *
+     * @param notification
+     *      The built notification
+     */
+    private static boolean isDownload (Notification notification) {
+        return notification.getOptions().getType().equals("download");
+    }
+
     /**
      * Clear local notification specified by ID.
      *
@@ -117,31 +251,152 @@ public class Manager {
      *      Receiver to handle the trigger event
      */
     public Notification update (int id, JSONObject updates, Class<?> receiver) {
-        Notification notification = get(id);
+        NotificationRecord record = getRegistry().get(id);
 
-        if (notification == null) {
+        if (record == null) {
+            return null;
+        }
+
+        JSONObject options = record.toJSONObject();
+
+        if (options == null) {
             return null;
         }
 
-        JSONObject options = mergeJSONObjects(notification.getOptions().getDict(), updates);
+        Notification current = getLive(id);
+
+        // The progress fast path doesn't persist, keep the shown progress
+        if (current != null && !updates.has("progress")) {
+            try {
+                options.put("progress", current.getProgress());
+            } catch (JSONException ignore) {}
+        }
+
+        mergeJSONObjects(options, updates);
 
         try {
             options.put("updated", true);
         } catch (JSONException ignore) {}
 
-        String type = notification.getOptions().getType();
+        Options opts = new Options(context).parse(options);
 
-        if(type.equals("download") || type.equals("media")) {
-            notification = Builder.update(new Options(context).parse(options), notification);
+        // Changed or removed in the meantime, e.g. cleared by a receiver
+        if (!getRegistry().replace(record, opts))
+            return null;
 
-            notification.persist();
-            notification.show();
+        if (record.isShownImmediately()) {
+            Notification notification = current != null ? current : get(id);
+
+            if (notification == null)
+                return null;
+
+            notification = Builder.update(opts, notification);
+
+            notification.dispatch();
+            setLive(id, notification);
             return notification;
         }
 
-        notification.cancel();
+        // The alarm looks up the current options, no need to re-create it
+        if (IntentPayload.isIdOnly(context) && isSameSchedule(record, opts))
+            return new Notification(context, opts, null, receiver);
+
+        wrap(record).retract();
+
+        return scheduleAlarm(opts, receiver);
+    }
 
-        return schedule(options, receiver);
+    /**
+     * If the updated options keep the pending schedule of the notification.
+     *
+     * @param record
+     *      The persisted notification
+     * @param options
+     *      The updated options
+     */
+    private boolean isSameSchedule (NotificationRecord record, Options options) {
+        long now = System.currentTimeMillis();
+
+        return !record.isRepeating()
+                && options.getRepeatInterval() == 0
+                && record.isScheduled(now)
+                && record.getTriggerTime() == options.getTriggerTime()
+                && record.getType().equals(options.getType());
+    }
+
+    /**
+     * Change the progress of a shown download notification. Fast path for
+     * frequent updates, which keeps the built notification in memory and
+     * skips persisting the transient progress.
+     *
+     * @param id
+     *      The notification ID
+     * @param progress
+     *      The progress in percent
+     *
+     * @return
+     *      null if there is no such download notification
+     */
+    public Notification updateProgress (int id, int progress) {
+        Notification notification;
+
+        if (!getRegistry().contains(id)) {
+            setLive(id, null);
+            return null;
+        }
+
+        notification = getLive(id);
+
+        if (notification == null) {
+            notification = get(id);
+
+            if (notification == null)
+                return null;
+
+            setLive(id, notification);
+        }
+
+        // Applies to both paths, only downloads get a progress bar
+        if (!isDownload(notification))
+            return null;
+
+        notification.showProgress(progress);
+
+        return notification;
+    }
+
+    /**
+     * Built download notification kept in memory for progress updates.
+     *
+     * @param id
+     *      The notification ID
+     *
+     * @return
+     *      null if none is kept
+     */
+    private static Notification getLive (int id) {
+        synchronized (live) {
+            return live.get(id);
+        }
+    }
+
+    /**
+     * Keep the built download notification in memory for progress updates.
+     * Notifications of other types don't get kept.
+     *
+     * @param id
+     *      The notification ID
+     * @param notification
+     *      The built notification or null to release it
+     */
+    private static void setLive (int id, Notification notification) {
+        synchronized (live) {
+            if (notification == null || !isDownload(notification)) {
+                live.remove(id);
+            } else {
+                live.put(id, notification);
+            }
+        }
     }
 
     /**
@@ -151,10 +406,11 @@ public class Manager {
      *      The notification ID
      */
     public Notification clear (int id) {
-        Notification notification = get(id);
+        Notification notification = wrap(getRegistry().get(id));
 
         if (notification != null) {
             notification.clear();
+            setLive(id, null);
         }
 
         return notification;
@@ -167,57 +423,109 @@ public class Manager {
      *      The notification ID
      */
     public Notification cancel (int id) {
-        Notification notification = get(id);
+        Notification notification = wrap(getRegistry().get(id));
 
         if (notification != null) {
             notification.cancel();
+            setLive(id, null);
         }
 
         return notification;
     }
 
     /**
-     * Clear all local notifications.
+     * Clear multiple local notifications at once. Non-repeating ones get
+     * removed from the notification center, the triggered among them
+     * also from the store within one transaction.
+     *
+     * @param ids
+     *      Set of notification IDs
+     *
+     * @return
+     *      Records of all found notifications
      */
-    public void clearAll () {
-        List<Notification> notifications = getAll();
+    public List<NotificationRecord> clear (List<Integer> ids) {
+        List<NotificationRecord> records = getRegistry().getAll(ids);
+        List<Integer> triggered = new ArrayList<Integer>(records.size());
+        NotifyDispatcher dispatcher = NotifyDispatcher.getInstance(context);
+        long now = System.currentTimeMillis();
 
-        for (Notification notification : notifications) {
-            notification.clear();
+        for (NotificationRecord record : records) {
+            int id = record.getId();
+
+            setLive(id, null);
+
+            if (record.isRepeating())
+                continue;
+
+            dispatcher.cancel(id);
+
+            if (!record.isScheduled(now)) {
+                triggered.add(id);
+            }
         }
 
-        getNotMgr().cancelAll();
+        getRegistry().removeAll(triggered);
+
+        return records;
     }
 
     /**
-     * Cancel all local notifications.
+     * Cancel multiple local notifications at once. Cancels their alarms
+     * without building the notifications and removes them from the store
+     * within one transaction.
+     *
+     * @param ids
+     *      Set of notification IDs
+     *
+     * @return
+     *      Records of all found notifications
      */
-    public void cancelAll () {
-        List<Notification> notifications = getAll();
+    public List<NotificationRecord> cancel (List<Integer> ids) {
+        List<NotificationRecord> records = getRegistry().getAll(ids);
+        List<Integer> found = new ArrayList<Integer>(records.size());
+        NotifyDispatcher dispatcher = NotifyDispatcher.getInstance(context);
+        Class<?> receiver = Notification.getDefaultTriggerReceiver();
+
+        for (NotificationRecord record : records) {
+            int id = record.getId();
+
+            Notification.cancelAlarm(context, id, receiver);
+            dispatcher.cancel(id);
+            setLive(id, null);
+            found.add(id);
+        }
 
-        for (Notification notification : notifications) {
-            notification.cancel();
+        if (Scheduler.isEnabled(context)) {
+            Scheduler.getInstance(context).removeAll(found, receiver);
         }
 
-        getNotMgr().cancelAll();
+        getRegistry().removeAll(found);
+
+        return records;
     }
 
     /**
-     * All local notifications IDs.
+     * Clear all local notifications.
      */
-    public List<Integer> getIds() {
-        Set<String> keys = getPrefs().getAll().keySet();
-        ArrayList<Integer> ids = new ArrayList<Integer>();
+    public void clearAll () {
+        clear(getRegistry().getIds(Notification.Type.TRIGGERED));
+        NotifyDispatcher.getInstance(context).cancelAll();
+    }
 
-        for (String key : keys) {
-            try {
-                ids.add(Integer.parseInt(key));
-            } catch (NumberFormatException e) {
-                e.printStackTrace();
-            }
-        }
+    /**
+     * Cancel all local notifications.
+     */
+    public void cancelAll () {
+        cancel(getRegistry().getIds());
+        NotifyDispatcher.getInstance(context).cancelAll();
+    }
 
-        return ids;
+    /**
+     * All local notifications IDs.
+     */
+    public List<Integer> getIds() {
+        return getRegistry().getIds();
     }
 
     /**
@@ -227,16 +535,7 @@ public class Manager {
      *      The notification life cycle type
      */
     public List<Integer> getIdsByType(Notification.Type type) {
-        List<Notification> notifications = getAll();
-        ArrayList<Integer> ids = new ArrayList<Integer>();
-
-        for (Notification notification : notifications) {
-            if (notification.getType() == type) {
-                ids.add(notification.getId());
-            }
-        }
-
-        return ids;
+        return getRegistry().getIds(type);
     }
 
     /**
@@ -273,19 +572,7 @@ public class Manager {
      *      The notification life cycle type
      */
     public List<Notification> getByType(Notification.Type type) {
-        List<Notification> notifications = getAll();
-        ArrayList<Notification> list = new ArrayList<Notification>();
-
-        if (type == Notification.Type.ALL)
-            return notifications;
-
-        for (Notification notification : notifications) {
-            if (notification.getType() == type) {
-                list.add(notification);
-            }
-        }
-
-        return list;
+        return getByIds(getIdsByType(type));
     }
 
     /**
@@ -298,17 +585,7 @@ public class Manager {
      */
     @SuppressWarnings("UnusedDeclaration")
     public List<Notification> getBy(Notification.Type type, List<Integer> ids) {
-        ArrayList<Notification> notifications = new ArrayList<Notification>();
-
-        for (int id : ids) {
-            Notification notification = get(id);
-
-            if (notification != null && notification.isScheduled()) {
-                notifications.add(notification);
-            }
-        }
-
-        return notifications;
+        return getByIds(filterByType(type, ids));
     }
 
     /**
@@ -318,7 +595,7 @@ public class Manager {
      *      Notification ID
      */
     public boolean exist (int id) {
-        return get(id) != null;
+        return getRegistry().contains(id);
     }
 
     /**
@@ -330,9 +607,7 @@ public class Manager {
      *      Notification type
      */
     public boolean exist (int id, Notification.Type type) {
-        Notification notification = get(id);
-
-        return notification != null && notification.getType() == type;
+        return getRegistry().isType(id, type);
     }
 
     /**
@@ -349,17 +624,7 @@ public class Manager {
      *      Set of notification IDs
      */
     public List<JSONObject> getOptionsById(List<Integer> ids) {
-        ArrayList<JSONObject> options = new ArrayList<JSONObject>();
-
-        for (int id : ids) {
-            Notification notification = get(id);
-
-            if (notification != null) {
-                options.add(notification.getOptions().getDict());
-            }
-        }
-
-        return options;
+        return toOptions(iterator(Notification.Type.ALL, ids));
     }
 
     /**
@@ -369,14 +634,7 @@ public class Manager {
      *      The notification life cycle type
      */
     public List<JSONObject> getOptionsByType(Notification.Type type) {
-        ArrayList<JSONObject> options = new ArrayList<JSONObject>();
-        List<Notification> notifications = getByType(type);
-
-        for (Notification notification : notifications) {
-            options.add(notification.getOptions().getDict());
-        }
-
-        return options;
+        return toOptions(iterator(type));
     }
 
     /**
@@ -391,21 +649,78 @@ public class Manager {
     public List<JSONObject> getOptionsBy(Notification.Type type,
                                          List<Integer> ids) {
 
-        if (type == Notification.Type.ALL)
-            return getOptionsById(ids);
+        return toOptions(iterator(type, ids));
+    }
 
+    /**
+     * Properties of all records of the iterator.
+     *
+     * @param records
+     *      Iterator over notification records
+     */
+    private List<JSONObject> toOptions(Iterator<NotificationRecord> records) {
         ArrayList<JSONObject> options = new ArrayList<JSONObject>();
-        List<Notification> notifications = getByIds(ids);
 
-        for (Notification notification : notifications) {
-            if (notification.getType() == type) {
-                options.add(notification.getOptions().getDict());
+        while (records.hasNext()) {
+            JSONObject dict = records.next().toJSONObject();
+
+            if (dict != null) {
+                options.add(dict);
             }
         }
 
         return options;
     }
 
+    /**
+     * Lazy iterator over the records of all local notifications from
+     * given type. Walks a single snapshot of the registry, so the result
+     * is consistent and writes in between don't affect it.
+     *
+     * @param type
+     *      The notification life cycle type
+     */
+    public Iterator<NotificationRecord> iterator (Notification.Type type) {
+        return getRegistry().snapshot()
+                .records(type, System.currentTimeMillis());
+    }
+
+    /**
+     * Lazy iterator over the records of the local notifications with
+     * matching ID from given type. Looks them up in a single snapshot of
+     * the registry.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param ids
+     *      Set of notification IDs
+     */
+    public Iterator<NotificationRecord> iterator (Notification.Type type,
+                                                  List<Integer> ids) {
+        return new RecordIterator(getRegistry().snapshot(), type, ids);
+    }
+
+    /**
+     * Subset of IDs from notifications of given type.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param ids
+     *      Set of notification IDs
+     */
+    private List<Integer> filterByType(Notification.Type type,
+                                       List<Integer> ids) {
+
+        ArrayList<Integer> list = new ArrayList<Integer>(ids.size());
+        Iterator<NotificationRecord> it = iterator(type, ids);
+
+        while (it.hasNext()) {
+            list.add(it.next().getId());
+        }
+
+        return list;
+    }
+
     /**
      * Get existent local notification.
      *
@@ -413,25 +728,36 @@ public class Manager {
      *      Notification ID
      */
     public Notification get(int id) {
-        Map<String, ?> alarms = getPrefs().getAll();
-        String notId          = Integer.toString(id);
-        JSONObject options;
+        NotificationRecord record = getRegistry().get(id);
+        JSONObject options = record != null ? record.toJSONObject() : null;
 
-        if (!alarms.containsKey(notId))
+        if (options == null)
             return null;
 
+        Builder builder = new Builder(context, options);
 
-        try {
-            String json = alarms.get(notId).toString();
-            options = new JSONObject(json);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        return builder.build();
+    }
+
+    /**
+     * Wrap the record into a notification without building the platform
+     * notification. Sufficient to schedule, clear or cancel the alarm.
+     *
+     * @param record
+     *      Notification record
+     *
+     * @return
+     *      null if there is no record or its options are broken
+     */
+    private Notification wrap (NotificationRecord record) {
+        JSONObject dict = record != null ? record.toJSONObject() : null;
+
+        if (dict == null)
             return null;
-        }
 
-        Builder builder = new Builder(context, options);
+        Options options = new Options(context).parse(dict);
 
-        return builder.build();
+        return new Notification(context, options, null, null);
     }
 
     /**
@@ -459,18 +785,87 @@ public class Manager {
     }
 
     /**
-     * Shared private preferences for the application.
+     * Iterates over a list of IDs and looks up their records on demand.
      */
-    private SharedPreferences getPrefs () {
-        return context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    private static class RecordIterator implements Iterator<NotificationRecord> {
+
+        // Snapshot to look up the records
+        private final Registry.Snapshot snapshot;
+
+        // Type the records have to match
+        private final Notification.Type type;
+
+        // IDs to iterate over
+        private final Iterator<Integer> ids;
+
+        // Time to decide between scheduled and triggered
+        private final long now = System.currentTimeMillis();
+
+        // Record to return next
+        private NotificationRecord next;
+
+        /**
+         * Constructor
+         *
+         * @param snapshot
+         *      Snapshot to look up the records
+         * @param type
+         *      Type the records have to match
+         * @param ids
+         *      IDs to iterate over
+         */
+        RecordIterator (Registry.Snapshot snapshot, Notification.Type type,
+                        List<Integer> ids) {
+            this.snapshot = snapshot;
+            this.type     = type;
+            this.ids      = ids.iterator();
+        }
+
+        @Override
+        public boolean hasNext () {
+            while (next == null && ids.hasNext()) {
+                NotificationRecord record = snapshot.get(ids.next());
+
+                if (record != null && isType(record)) {
+                    next = record;
+                }
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public NotificationRecord next () {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            NotificationRecord record = next;
+            next = null;
+
+            return record;
+        }
+
+        @Override
+        public void remove () {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * If the record matches the requested type.
+         */
+        private boolean isType (NotificationRecord record) {
+            if (type == Notification.Type.ALL)
+                return true;
+
+            return record.isScheduled(now) == (type == Notification.Type.SCHEDULED);
+        }
     }
 
     /**
-     * Notification manager for the application.
+     * Registry with all persisted notifications.
      */
-    private NotificationManager getNotMgr () {
-        return (NotificationManager) context
-                .getSystemService(Context.NOTIFICATION_SERVICE);
+    private Registry getRegistry () {
+        return Registry.getInstance(context);
     }
 
 }
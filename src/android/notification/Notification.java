@@ -25,18 +25,18 @@ package de.appplant.cordova.plugin.notification;
 
 
 import android.app.AlarmManager;
-import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
 import android.support.v7.app.NotificationCompat;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 /**
  * Wrapper class around OS notification class. Handles basic operations
@@ -52,7 +52,7 @@ public class Notification {
     // Default receiver to handle the trigger event
     private static Class<?> defaultReceiver = TriggerReceiver.class;
 
-    // Key for private preferences
+    // Key for private preferences used by former versions
     static final String PREF_KEY = "LocalNotification";
 
     // Application context passed by constructor
@@ -67,6 +67,9 @@ public class Notification {
     // Receiver to handle the trigger event
     private Class<?> receiver = defaultReceiver;
 
+    // Progress in percent shown by the progress bar
+    private volatile int progress;
+
     /**
      * Constructor
      *
@@ -85,6 +88,7 @@ public class Notification {
         this.builder = builder;
 
         this.receiver = receiver != null ? receiver : defaultReceiver;
+        this.progress = options.getProgress();
     }
 
     /**
@@ -127,7 +131,7 @@ public class Notification {
      * If the notification was in the past.
      */
     public boolean wasInThePast () {
-        return new Date().after(options.getTriggerDate());
+        return System.currentTimeMillis() > options.getTriggerTime();
     }
 
     /**
@@ -151,10 +155,10 @@ public class Notification {
      *      Set to false to remove the flag from the option map
      */
     protected boolean isUpdate (boolean keepFlag) {
-        boolean updated = options.getDict().optBoolean("updated", false);
+        boolean updated = options.isUpdated();
 
         if (!keepFlag) {
-            options.getDict().remove("updated");
+            options.clearUpdated();
         }
 
         return updated;
@@ -171,14 +175,27 @@ public class Notification {
      * Schedule the local notification.
      */
     public void schedule() {
+        persist();
+        scheduleAlarm();
+    }
+
+    /**
+     * Register the alarm to fire the trigger event. Doesn't persist the
+     * notification, which is up to the caller.
+     */
+    void scheduleAlarm() {
         long triggerTime = options.getTriggerTime();
 
-        persist();
+        if (Scheduler.isEnabled(context)) {
+            Scheduler.getInstance(context).add(options, receiver);
+            return;
+        }
 
         // Intent gets called when the Notification gets fired
         Intent intent = new Intent(context, receiver)
-                .setAction(options.getIdStr())
-                .putExtra(Options.EXTRA, options.toString());
+                .setAction(options.getIdStr());
+
+        IntentPayload.put(context, intent, options);
 
         PendingIntent pi = PendingIntent.getBroadcast(
                 context, 0, intent, PendingIntent.FLAG_CANCEL_CURRENT);
@@ -199,8 +216,10 @@ public class Notification {
         if (!isRepeating() && wasInThePast())
             unpersist();
 
-        if (!isRepeating())
-            getNotMgr().cancel(getId());
+        if (!isRepeating()) {
+            getDispatcher().cancel(getId());
+            Manager.releaseLive(getId());
+        }
     }
 
     /**
@@ -212,45 +231,184 @@ public class Notification {
      * method and cancel it.
      */
     public void cancel() {
+        retract();
+        unpersist();
+    }
+
+    /**
+     * Cancel the alarm and remove the notification from the notification
+     * center, but keep it persisted. Used before the alarm of the updated
+     * notification gets registered.
+     */
+    void retract() {
+        cancelAlarm();
+
+        if (Scheduler.isEnabled(context)) {
+            Scheduler.getInstance(context).remove(getId(), receiver);
+        }
+
+        getDispatcher().cancel(getId());
+        Manager.releaseLive(getId());
+    }
+
+    /**
+     * Cancel the alarm which has been registered for this notification.
+     */
+    void cancelAlarm() {
+        cancelAlarm(context, getId(), receiver);
+    }
+
+    /**
+     * Cancel the alarm which has been registered for the notification.
+     * Doesn't need to build the notification.
+     *
+     * @param context
+     *      Application context
+     * @param id
+     *      The notification ID
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    static void cancelAlarm(Context context, int id, Class<?> receiver) {
         Intent intent = new Intent(context, receiver)
-                .setAction(options.getIdStr());
+                .setAction(Integer.toString(id));
 
         PendingIntent pi = PendingIntent.
                 getBroadcast(context, 0, intent, 0);
 
-        getAlarmMgr().cancel(pi);
-        getNotMgr().cancel(options.getId());
+        AlarmManager alarmMgr = (AlarmManager) context
+                .getSystemService(Context.ALARM_SERVICE);
 
-        unpersist();
+        alarmMgr.cancel(pi);
     }
 
     /**
-     * Present the local notification to user.
+     * Present the local notification to user. Posts right away, since the
+     * process of a receiver might die before a delayed post runs.
      */
     public void show () {
         // TODO Show dialog when in foreground
+        getDispatcher().dispatchNow(this);
+        repostOnceDownloaded();
+    }
+
+    /**
+     * Present the local notification to user as the result of a call from
+     * JS. Calls in quick succession, e.g. the updates of a media or
+     * download notification, get coalesced by the dispatcher.
+     */
+    void dispatch () {
         showNotification();
+        repostOnceDownloaded();
+    }
+
+    /**
+     * Post the notification again with the remote assets once their
+     * downloads are done. Until then it shows the default icon and sound.
+     * The repost doesn't alert the user a second time.
+     */
+    private void repostOnceDownloaded () {
+        List<AssetDownloader.Download> downloads = options.getPendingDownloads();
+
+        if (downloads.isEmpty() || builder == null)
+            return;
+
+        final AtomicInteger remaining = new AtomicInteger(downloads.size());
+
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                if (remaining.decrementAndGet() == 0) {
+                    repost();
+                }
+            }
+        };
+
+        for (AssetDownloader.Download download : downloads) {
+            download.addListener(listener);
+        }
+    }
+
+    /**
+     * Apply the downloaded assets and post the notification again, unless
+     * it has been removed in the meantime.
+     */
+    private void repost () {
+
+        if (!Registry.getInstance(context).contains(getId()))
+            return;
+
+        Options refreshed;
+
+        try {
+            refreshed = new Options(context).parse(new JSONObject(options.toString()));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // Download failed, keep the defaults
+        if (!refreshed.getPendingDownloads().isEmpty())
+            return;
+
+        synchronized (builder) {
+            builder.setLargeIcon(refreshed.getIconBitmap())
+                   .setOnlyAlertOnce(true);
+
+            if (!options.getType().equals("media")) {
+                builder.setSound(refreshed.getSoundUri());
+            }
+        }
+
+        showNotification();
+    }
+
+    /**
+     * Change the progress of the shown notification. Neither persists the
+     * progress nor rebuilds the notification. Updates in quick succession
+     * get coalesced by the dispatcher.
+     *
+     * @param progress
+     *      The progress in percent
+     */
+    void showProgress (int progress) {
+        synchronized (builder) {
+            builder.setProgress(100, progress, false);
+            this.progress = progress;
+        }
+
+        showNotification();
+    }
+
+    /**
+     * Progress in percent currently shown, which might be ahead of the
+     * persisted options.
+     */
+    int getProgress () {
+        return progress;
     }
 
     /**
      * Show as local notification when in background.
      */
-    @SuppressWarnings("deprecation")
     private void showNotification () {
-        int id = getOptions().getId();
+        getDispatcher().dispatch(this);
+    }
 
-        try {
+    /**
+     * Build the platform notification from the current builder state.
+     */
+    @SuppressWarnings("deprecation")
+    android.app.Notification buildPlatformNotification () {
+        synchronized (builder) {
             if (Build.VERSION.SDK_INT <= 15) {
                 // Notification for HoneyComb to ICS
-                getNotMgr().notify(id, builder.getNotification());
+                return builder.getNotification();
             } else {
                 // Notification for Jellybean and above
-                getNotMgr().notify(id, builder.build());
+                return builder.build();
             }
         }
-        catch(java.lang.Exception e) {
-            e.printStackTrace();
-        }
     }
 
     /**
@@ -273,68 +431,40 @@ public class Notification {
      * Encode options to JSON.
      */
     public String toString() {
-        JSONObject dict = options.getDict();
         JSONObject json = new JSONObject();
 
         try {
-            json = new JSONObject(dict.toString());
+            json = new JSONObject(options.toString());
         } catch (JSONException e) {
             e.printStackTrace();
         }
 
-        json.remove("firstAt");
-        json.remove("updated");
-        json.remove("soundUri");
-        json.remove("iconUri");
+        NotificationRecord.removeInternalKeys(json);
 
         return json.toString();
     }
 
     /**
-     * Persist the information of this notification to the Android Shared
-     * Preferences. This will allow the application to restore the notification
-     * upon device reboot, app restart, retrieve notifications, aso.
+     * Persist the information of this notification to the plugin's store.
+     * This will allow the application to restore the notification upon
+     * device reboot, app restart, retrieve notifications, aso.
      */
     public void persist () {
-        SharedPreferences.Editor editor = getPrefs().edit();
-
-        editor.putString(options.getIdStr(), options.toString());
-
-        if (Build.VERSION.SDK_INT < 9) {
-            editor.commit();
-        } else {
-            editor.apply();
-        }
+        Registry.getInstance(context).put(options);
     }
 
     /**
-     * Remove the notification from the Android shared Preferences.
+     * Remove the notification from the plugin's store.
      */
     private void unpersist () {
-        SharedPreferences.Editor editor = getPrefs().edit();
-
-        editor.remove(options.getIdStr());
-
-        if (Build.VERSION.SDK_INT < 9) {
-            editor.commit();
-        } else {
-            editor.apply();
-        }
-    }
-
-    /**
-     * Shared private preferences for the application.
-     */
-    private SharedPreferences getPrefs () {
-        return context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        Registry.getInstance(context).remove(options.getId());
     }
 
     /**
-     * Notification manager for the application.
+     * Dispatcher to post the notification.
      */
-    private NotificationManager getNotMgr () {
-        return (NotificationManager) context
-                .getSystemService(Context.NOTIFICATION_SERVICE);
+    private NotifyDispatcher getDispatcher () {
+        return NotifyDispatcher.getInstance(context);
     }
 
     /**
@@ -354,4 +484,11 @@ public class Notification {
         defaultReceiver = receiver;
     }
 
+    /**
+     * Default receiver to handle the trigger event.
+     */
+    static Class<?> getDefaultTriggerReceiver () {
+        return defaultReceiver;
+    }
+
 }
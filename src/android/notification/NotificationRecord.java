@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Lightweight and immutable snapshot of a persisted local notification.
+ * Holds the values needed to answer queries next to the raw JSON encoded
+ * options. Unlike Notification it doesn't require to build the platform
+ * notification, which is only necessary to show it.
+ */
+public final class NotificationRecord {
+
+    // Notification ID
+    private final int id;
+
+    // Trigger time in milliseconds
+    private final long triggerTime;
+
+    // Repeat interval in milliseconds
+    private final long interval;
+
+    // Type like download or media
+    private final String type;
+
+    // JSON encoded options
+    private final String json;
+
+    /**
+     * Constructor
+     *
+     * @param id
+     *      Notification ID
+     * @param triggerTime
+     *      Trigger time in milliseconds
+     * @param interval
+     *      Repeat interval in milliseconds
+     * @param type
+     *      Type like download or media
+     * @param json
+     *      JSON encoded options
+     */
+    NotificationRecord (int id, long triggerTime, long interval,
+                        String type, String json) {
+
+        this.id          = id;
+        this.triggerTime = triggerTime;
+        this.interval    = interval;
+        this.type        = type;
+        this.json        = json;
+    }
+
+    /**
+     * Notification ID.
+     */
+    public int getId () {
+        return id;
+    }
+
+    /**
+     * Trigger time in milliseconds.
+     */
+    public long getTriggerTime () {
+        return triggerTime;
+    }
+
+    /**
+     * Repeat interval in milliseconds.
+     */
+    public long getRepeatInterval () {
+        return interval;
+    }
+
+    /**
+     * Type like download or media.
+     */
+    public String getType () {
+        return type;
+    }
+
+    /**
+     * If it's a repeating notification.
+     */
+    public boolean isRepeating () {
+        return interval > 0;
+    }
+
+    /**
+     * If the notification is scheduled at the given time.
+     *
+     * @param now
+     *      Time in milliseconds
+     */
+    public boolean isScheduled (long now) {
+        return isRepeating() || triggerTime >= now;
+    }
+
+    /**
+     * If the notification gets shown right away instead of by an alarm.
+     */
+    boolean isShownImmediately () {
+        return type.equals("download") || type.equals("media");
+    }
+
+    /**
+     * JSON encoded options.
+     */
+    public String getJSON () {
+        return json;
+    }
+
+    /**
+     * New JSON object with the options of the notification.
+     *
+     * @return
+     *      null if the JSON could not be parsed
+     */
+    public JSONObject toJSONObject () {
+        try {
+            return new JSONObject(json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * JSON encoded options as passed to the event listeners, without the
+     * values of internal use. Same as Notification#toString.
+     */
+    public String toEventJSON () {
+        JSONObject dict = toJSONObject();
+
+        if (dict == null)
+            return json;
+
+        removeInternalKeys(dict);
+
+        return dict.toString();
+    }
+
+    /**
+     * Remove the values which are only of internal use.
+     *
+     * @param json
+     *      JSON encoded options
+     */
+    static void removeInternalKeys(JSONObject json) {
+        json.remove("firstAt");
+        json.remove("updated");
+        json.remove("soundUri");
+        json.remove("iconUri");
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces updates in front of NotificationManager.notify. Android drops
+ * updates beyond about 10 per second and app, therefore each notification
+ * gets posted at most once per interval. Updates within the interval
+ * replace each other and only the latest state gets posted. Discrete
+ * posts like the trigger of a notification don't wait for the interval,
+ * since a receiver's process might die before a delayed post runs.
+ */
+public class NotifyDispatcher {
+
+    // Default min. time between two posts of a notification in ms
+    public static final long DEFAULT_INTERVAL = 100;
+
+    // The single instance per process
+    private static NotifyDispatcher instance;
+
+    // Application context passed by constructor
+    private final Context context;
+
+    // Posts the delayed updates
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Latest pending update keyed by notification ID
+    private final SparseArray<Notification> pending =
+            new SparseArray<Notification>();
+
+    // Uptime of the last post keyed by notification ID, removed once the
+    // interval has passed
+    private final SparseArray<Long> lastPost = new SparseArray<Long>();
+
+    // Number of posted updates
+    private final AtomicLong delivered = new AtomicLong();
+
+    // Number of updates replaced by a later one
+    private final AtomicLong coalesced = new AtomicLong();
+
+    // Min. time between two posts of a notification in ms
+    private volatile long interval = DEFAULT_INTERVAL;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    private NotifyDispatcher (Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Static method to retrieve the shared instance.
+     *
+     * @param context
+     *      Application context
+     */
+    public static synchronized NotifyDispatcher getInstance (Context context) {
+        if (instance == null) {
+            instance = new NotifyDispatcher(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    /**
+     * Set the min. time between two posts of the same notification.
+     *
+     * @param interval
+     *      Time in milliseconds, 0 to post every update
+     */
+    public void setMinInterval (long interval) {
+        this.interval = Math.max(0, interval);
+    }
+
+    /**
+     * Number of updates which have been posted.
+     */
+    public long getDeliveredCount () {
+        return delivered.get();
+    }
+
+    /**
+     * Number of updates which have been replaced by a later one.
+     */
+    public long getCoalescedCount () {
+        return coalesced.get();
+    }
+
+    /**
+     * Post the notification right away or, if it has been posted within
+     * the interval, once the interval has passed.
+     *
+     * @param notification
+     *      The notification in its latest state
+     */
+    void dispatch (Notification notification) {
+        final int id = notification.getId();
+        long delay;
+
+        synchronized (this) {
+            if (pending.get(id) != null) {
+                pending.put(id, notification);
+                coalesced.incrementAndGet();
+                return;
+            }
+
+            delay = lastPost.get(id, 0L) + interval - SystemClock.uptimeMillis();
+
+            if (delay > 0) {
+                pending.put(id, notification);
+            } else {
+                lastPost.put(id, SystemClock.uptimeMillis());
+                post(notification);
+                return;
+            }
+        }
+
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                flush(id);
+            }
+        }, delay);
+    }
+
+    /**
+     * Post the notification right away regardless of the interval, e.g.
+     * when called from a receiver. Replaces a pending update.
+     *
+     * @param notification
+     *      The notification in its latest state
+     */
+    void dispatchNow (Notification notification) {
+        synchronized (this) {
+            pending.remove(notification.getId());
+            lastPost.put(notification.getId(), SystemClock.uptimeMillis());
+            post(notification);
+        }
+    }
+
+    /**
+     * Drop the pending update and remove the notification from the
+     * notification center. Runs under the same lock as the posts, so a
+     * pending update can't bring the notification back afterwards.
+     *
+     * @param id
+     *      The notification ID
+     */
+    synchronized void cancel (int id) {
+        pending.remove(id);
+        lastPost.remove(id);
+
+        getNotMgr().cancel(id);
+    }
+
+    /**
+     * Drop all pending updates and remove all notifications from the
+     * notification center.
+     */
+    synchronized void cancelAll () {
+        pending.clear();
+        lastPost.clear();
+
+        getNotMgr().cancelAll();
+    }
+
+    /**
+     * Post the pending update of the notification.
+     *
+     * @param id
+     *      The notification ID
+     */
+    private synchronized void flush (int id) {
+        Notification notification = pending.get(id);
+
+        if (notification == null)
+            return;
+
+        pending.remove(id);
+        lastPost.put(id, SystemClock.uptimeMillis());
+        post(notification);
+    }
+
+    /**
+     * Build and post the notification. Forgets the time of the post once
+     * the interval has passed. Called under the lock, so posts and
+     * cancels of a notification can't overtake each other.
+     *
+     * @param notification
+     *      The notification to post
+     */
+    private void post (Notification notification) {
+        final int id = notification.getId();
+
+        try {
+            getNotMgr().notify(id, notification.buildPlatformNotification());
+            delivered.incrementAndGet();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                expire(id);
+            }
+        }, interval);
+    }
+
+    /**
+     * Remove the time of the last post if its interval has passed and no
+     * update is pending.
+     *
+     * @param id
+     *      The notification ID
+     */
+    private synchronized void expire (int id) {
+        Long last = lastPost.get(id);
+
+        if (last == null || pending.get(id) != null)
+            return;
+
+        if (SystemClock.uptimeMillis() - last >= interval) {
+            lastPost.remove(id);
+        }
+    }
+
+    /**
+     * Notification manager for the application.
+     */
+    private NotificationManager getNotMgr () {
+        return (NotificationManager) context
+                .getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+}
@@ -32,24 +32,96 @@ import android.support.v7.app.NotificationCompat;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Wrapper around the JSON object passed through JS which contains all
  * possible option values. Class provides simple readers and more advanced
  * methods to convert independent values into platform specific values.
+ * All values get read and converted once while parsing, the readers only
+ * return the typed fields.
  */
 public class Options {
 
-    // Key name for bundled extras
+    // Key name for bundled extras with the JSON text of former versions
     static final String EXTRA = "NOTIFICATION_OPTIONS";
 
     // The original JSON object
     private JSONObject options = new JSONObject();
 
+    // JSON encoded options, built on first use
+    private String json;
+
+    // Binary encoded options, built on first use
+    private byte[] bytes;
+
     // Repeat interval
     private long interval = 0;
 
+    // Notification ID
+    private int id;
+
+    // Notification ID as a string
+    private String idStr = "0";
+
+    // Trigger date in milliseconds
+    private long triggerTime;
+
+    // Notification type like download or media
+    private String type = "";
+
+    // Title, falls back to the app name
+    private String title = "";
+
+    // Text for the local notification
+    private String text = "";
+
+    // Progress in percent for download notifications
+    private int progress;
+
+    // Media state for media notifications
+    private String mediastate = "paused";
+
+    // Badge number
+    private int badge;
+
+    // Ongoing flag
+    private boolean ongoing;
+
+    // Alert only once flag
+    private boolean alertOnlyOnce;
+
+    // Auto clear flag
+    private boolean autoClear;
+
+    // Update flag set by the manager
+    private boolean updated;
+
+    // ARGB color for the LED
+    private int ledColor = NotificationCompat.DEFAULT_LIGHTS;
+
+    // ARGB background color for the small icon
+    private int color = NotificationCompat.COLOR_DEFAULT;
+
+    // Icon path or resource name
+    private String icon = "";
+
+    // Small icon resource name
+    private String smallIcon = "";
+
+    // Resolved URI of the icon
+    private Uri iconUri;
+
+    // Resolved URI of the sound
+    private Uri soundUri;
+
+    // Downloads of remote assets which aren't cached yet
+    private final List<AssetDownloader.Download> downloads =
+            new ArrayList<AssetDownloader.Download>();
+
     // Application context
     private final Context context;
 
@@ -64,76 +136,153 @@ public class Options {
      *      Application context
      */
     public Options(Context context){
-    	this.context = context;
-        this.assets  = AssetUtil.getInstance(context);
+        this(context, AssetUtil.getInstance(context));
     }
 
     /**
-     * Parse given JSON properties.
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     * @param assets
+     *      Asset util instance, may be shared to resolve equal paths once
+     */
+    Options(Context context, AssetUtil assets){
+        this.context = context;
+        this.assets  = assets;
+    }
+
+    /**
+     * Parse given JSON properties. Drops the values read by a former
+     * parse, including the encoded forms. The options take ownership of
+     * the JSON object, changes to it later on don't get noticed.
      *
      * @param options
      *      JSON properties
      */
     public Options parse (JSONObject options) {
         this.options = options;
+        this.json    = null;
+        this.bytes   = null;
 
         parseInterval();
         parseAssets();
+        parseFields();
 
         return this;
     }
 
+    /**
+     * Read the plain values into typed fields.
+     */
+    private void parseFields() {
+        id            = options.optInt("id", 0);
+        idStr         = Integer.toString(id);
+        triggerTime   = options.optLong("at", 0) * 1000;
+        type          = options.optString("type", "");
+        text          = options.optString("text", "");
+        progress      = options.optInt("progress", 0);
+        mediastate    = options.optString("mediastate", "paused");
+        badge         = options.optInt("badge", 0);
+        ongoing       = options.optBoolean("ongoing", false);
+        alertOnlyOnce = options.optBoolean("alertOnlyOnce", false);
+        autoClear     = options.optBoolean("autoClear", false);
+        updated       = options.optBoolean("updated", false);
+        icon          = options.optString("icon", "");
+        smallIcon     = options.optString("smallIcon", "");
+        ledColor      = parseColor("led", NotificationCompat.DEFAULT_LIGHTS);
+        color         = parseColor("color", NotificationCompat.COLOR_DEFAULT);
+        title         = options.optString("title", "");
+
+        if (title.isEmpty()) {
+            title = context.getApplicationInfo().loadLabel(
+                    context.getPackageManager()).toString();
+        }
+
+        iconUri  = parseUri("iconUri");
+        soundUri = parseUri("soundUri");
+    }
+
     /**
      * Parse repeat interval.
      */
     private void parseInterval() {
-        String every = options.optString("every").toLowerCase();
+        interval = parseInterval(options.optString("every"));
+    }
+
+    /**
+     * Repeat interval in milliseconds for the value of the every option.
+     *
+     * @param every
+     *      Interval name like day or number of minutes
+     */
+    static long parseInterval(String every) {
+        every = every.toLowerCase();
 
         if (every.isEmpty()) {
-            interval = 0;
+            return 0;
         } else
         if (every.equals("second")) {
-            interval = 1000;
+            return 1000;
         } else
         if (every.equals("minute")) {
-            interval = AlarmManager.INTERVAL_FIFTEEN_MINUTES / 15;
+            return AlarmManager.INTERVAL_FIFTEEN_MINUTES / 15;
         } else
         if (every.equals("hour")) {
-            interval = AlarmManager.INTERVAL_HOUR;
+            return AlarmManager.INTERVAL_HOUR;
         } else
         if (every.equals("day")) {
-            interval = AlarmManager.INTERVAL_DAY;
+            return AlarmManager.INTERVAL_DAY;
         } else
         if (every.equals("week")) {
-            interval = AlarmManager.INTERVAL_DAY * 7;
+            return AlarmManager.INTERVAL_DAY * 7;
         } else
         if (every.equals("month")) {
-            interval = AlarmManager.INTERVAL_DAY * 31;
+            return AlarmManager.INTERVAL_DAY * 31;
         } else
         if (every.equals("quarter")) {
-            interval = AlarmManager.INTERVAL_HOUR * 2190;
+            return AlarmManager.INTERVAL_HOUR * 2190;
         } else
         if (every.equals("year")) {
-            interval = AlarmManager.INTERVAL_DAY * 365;
-        } else {
-            try {
-                interval = Integer.parseInt(every) * 60000;
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            return AlarmManager.INTERVAL_DAY * 365;
+        }
+
+        try {
+            return Integer.parseInt(every) * 60000;
+        } catch (Exception e) {
+            e.printStackTrace();
         }
+
+        return 0;
     }
 
     /**
-     * Parse asset URIs.
+     * Parse asset URIs. Resolves them again if the cached copies they
+     * point to have been removed in the meantime, e.g. by the cleanup of
+     * the asset cache. While remote assets are downloading, the defaults
+     * get used and the URIs don't get stored, so that the next parse
+     * resolves them again.
      */
     private void parseAssets() {
+        downloads.clear();
 
-        if (options.has("iconUri") && !options.optBoolean("updated"))
+        if (options.has("iconUri") && !options.optBoolean("updated")
+                && isAvailable("iconUri") && isAvailable("soundUri"))
             return;
 
-        Uri iconUri  = assets.parse(options.optString("icon", "icon"));
-        Uri soundUri = assets.parseSound(options.optString("sound", null));
+        String icon  = options.optString("icon", "icon");
+        String sound = options.optString("sound", null);
+        Uri iconUri  = assets.parse(icon);
+        Uri soundUri = assets.parseSound(sound);
+
+        addDownload(assets.getDownload(icon));
+        addDownload(assets.getDownload(sound));
+
+        if (!downloads.isEmpty()) {
+            options.remove("iconUri");
+            options.remove("soundUri");
+            return;
+        }
 
         try {
             options.put("iconUri", iconUri.toString());
@@ -143,6 +292,78 @@ public class Options {
         }
     }
 
+    /**
+     * Remember the running download of a remote asset.
+     *
+     * @param download
+     *      The download or null
+     */
+    private void addDownload(AssetDownloader.Download download) {
+        if (download != null) {
+            downloads.add(download);
+        }
+    }
+
+    /**
+     * Downloads of remote assets which weren't cached yet while parsing.
+     * The default icon and sound get used until they are done.
+     */
+    List<AssetDownloader.Download> getPendingDownloads() {
+        return downloads;
+    }
+
+    /**
+     * If the URI stored under given key doesn't point to a missing file.
+     *
+     * @param key
+     *      The option key
+     */
+    private boolean isAvailable(String key) {
+        Uri uri = Uri.parse(options.optString(key));
+
+        if (!"file".equals(uri.getScheme()) || uri.getPath() == null)
+            return true;
+
+        return new File(uri.getPath()).exists();
+    }
+
+    /**
+     * Parse hex color like FF0000 into an opaque ARGB color.
+     *
+     * @param key
+     *      The option key
+     * @param fallback
+     *      The color if none or an invalid one is given
+     */
+    private int parseColor(String key, int fallback) {
+        String hex = options.optString(key, null);
+
+        if (hex == null)
+            return fallback;
+
+        try {
+            return Integer.parseInt(hex, 16) + 0xFF000000;
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+            return fallback;
+        }
+    }
+
+    /**
+     * Parse the URI stored under given key.
+     *
+     * @param key
+     *      The option key
+     */
+    private Uri parseUri(String key) {
+        try {
+            return Uri.parse(options.optString(key));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * Application context.
      */
@@ -151,29 +372,35 @@ public class Options {
     }
 
     /**
-     * Wrapped JSON object.
+     * Copy of the wrapped JSON object. Changes to the copy don't affect
+     * the options, parse the changed copy into new options instead.
      */
     JSONObject getDict () {
-        return options;
+        try {
+            return new JSONObject(toString());
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return new JSONObject();
+        }
     }
 
     /**
      * Text for the local notification.
      */
     public String getText() {
-        return options.optString("text", "");
+        return text;
     }
 
     public String getType() {
-        return options.optString("type", "");
+        return type;
     }
 
     public int getProgress() {
-        return options.optInt("progress", 0);
+        return progress;
     }
 
     public String getMediastate() {
-        return options.optString("mediastate", "paused");
+        return mediastate;
     }
 
     /**
@@ -187,66 +414,79 @@ public class Options {
      * Badge number for the local notification.
      */
     public int getBadgeNumber() {
-        return options.optInt("badge", 0);
+        return badge;
     }
 
     /**
      * ongoing flag for local notifications.
      */
     public Boolean isOngoing() {
-        return options.optBoolean("ongoing", false);
+        return ongoing;
     }
 
     public Boolean isAlertOnlyOnce() {
-        return options.optBoolean("alertOnlyOnce", false);
+        return alertOnlyOnce;
     }
 
     /**
      * autoClear flag for local notifications.
      */
     public Boolean isAutoClear() {
-        return options.optBoolean("autoClear", false);
+        return autoClear;
+    }
+
+    /**
+     * If the options are an update of a former notification.
+     */
+    boolean isUpdated() {
+        return updated;
+    }
+
+    /**
+     * Remove the update flag from the options.
+     */
+    void clearUpdated() {
+        if (!updated)
+            return;
+
+        options.remove("updated");
+        updated = false;
+        json    = null;
+        bytes   = null;
     }
 
     /**
      * ID for the local notification as a number.
      */
     public Integer getId() {
-        return options.optInt("id", 0);
+        return id;
     }
 
     /**
      * ID for the local notification as a string.
      */
     public String getIdStr() {
-        return getId().toString();
+        return idStr;
     }
 
     /**
      * Trigger date.
      */
     public Date getTriggerDate() {
-        return new Date(getTriggerTime());
+        return new Date(triggerTime);
     }
 
     /**
      * Trigger date in milliseconds.
      */
     public long getTriggerTime() {
-        return options.optLong("at", 0) * 1000;
+        return triggerTime;
     }
 
     /**
      * Title for the local notification.
      */
     public String getTitle() {
-        String title = options.optString("title", "");
-
-        if (title.isEmpty()) {
-            title = context.getApplicationInfo().loadLabel(
-                    context.getPackageManager()).toString();
-        }
-
         return title;
     }
 
@@ -255,15 +495,7 @@ public class Options {
      *      The notification color for LED
      */
     public int getLedColor() {
-        String hex = options.optString("led", null);
-
-        if (hex == null) {
-            return NotificationCompat.DEFAULT_LIGHTS;
-        }
-
-        int aRGB = Integer.parseInt(hex, 16);
-
-        return aRGB + 0xFF000000;
+        return ledColor;
     }
 
     /**
@@ -272,30 +504,14 @@ public class Options {
      *      Returns null, if no color is given.
      */
     public int getColor() {
-        String hex = options.optString("color", null);
-
-        if (hex == null) {
-            return NotificationCompat.COLOR_DEFAULT;
-        }
-
-        int aRGB = Integer.parseInt(hex, 16);
-
-        return aRGB + 0xFF000000;
+        return color;
     }
 
     /**
      * Sound file path for the local notification.
      */
     public Uri getSoundUri() {
-        Uri uri = null;
-
-        try{
-            uri = Uri.parse(options.optString("soundUri"));
-        } catch (Exception e){
-            e.printStackTrace();
-        }
-
-        return uri;
+        return soundUri;
     }
 
     /**
@@ -305,8 +521,7 @@ public class Options {
         Bitmap bmp;
 
         try {
-            Uri uri = Uri.parse(options.optString("iconUri"));
-            bmp = assets.getIconFromUri(uri);
+            bmp = assets.getIconFromUri(iconUri);
         } catch (Exception e){
             e.printStackTrace();
             bmp = assets.getIconFromDrawable("icon");
@@ -319,8 +534,6 @@ public class Options {
      * Icon resource ID for the local notification.
      */
     public int getIcon () {
-        String icon = options.optString("icon", "");
-
         int resId = assets.getResIdForDrawable(icon);
 
         if (resId == 0) {
@@ -378,16 +591,37 @@ public class Options {
      * Small icon resource ID for the local notification.
      */
     public int getSmallIcon () {
-        String icon = options.optString("smallIcon", "");
-
-        return assets.getResIdForDrawable(icon);
+        return assets.getResIdForDrawable(smallIcon);
     }
 
     /**
      * JSON object as string.
      */
     public String toString() {
-        return options.toString();
+        if (json == null) {
+            json = options.toString();
+        }
+
+        return json;
+    }
+
+    /**
+     * Immutable record of the options as kept by the registry.
+     */
+    NotificationRecord toRecord() {
+        return new NotificationRecord(id, triggerTime, interval, type,
+                toString());
+    }
+
+    /**
+     * Binary encoded options to pass them through intent extras.
+     */
+    byte[] toBytes() {
+        if (bytes == null) {
+            bytes = OptionsCodec.encode(options);
+        }
+
+        return bytes;
     }
 
 }
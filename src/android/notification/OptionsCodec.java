@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+
+/**
+ * Compact binary encoding of the notification options to pass them through
+ * intent extras. Compared to the JSON text the encoding avoids quoting and
+ * number formatting, stores the well-known option keys as single bytes and
+ * decodes without tokenizing.
+ *
+ * Layout: a version byte followed by the encoded root object. Each value
+ * starts with a type tag, numbers and lengths are unsigned varints (signed
+ * ones zig-zag encoded) and strings are UTF-8.
+ */
+public final class OptionsCodec {
+
+    // Version of the binary layout, increase on any change. Intents of
+    // another version fail to decode and fall back to the registry.
+    private static final byte VERSION = 1;
+
+    // Type tags
+    private static final int NULL   = 0;
+    private static final int FALSE  = 1;
+    private static final int TRUE   = 2;
+    private static final int INT    = 3;
+    private static final int LONG   = 4;
+    private static final int DOUBLE = 5;
+    private static final int STRING = 6;
+    private static final int OBJECT = 7;
+    private static final int ARRAY  = 8;
+
+    // Well-known keys encoded by their index + 1, append only!
+    private static final String[] KEYS = {
+            "id", "at", "firstAt", "every", "text", "title", "type",
+            "sound", "soundUri", "icon", "iconUri", "smallIcon", "badge",
+            "data", "led", "color", "ongoing", "autoClear", "alertOnlyOnce",
+            "progress", "mediastate", "updated"
+    };
+
+    /**
+     * Static helper class.
+     */
+    private OptionsCodec () {}
+
+    /**
+     * Encode the options.
+     *
+     * @param dict
+     *      JSON properties
+     */
+    public static byte[] encode (JSONObject dict) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        out.write(VERSION);
+        writeObject(out, dict);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode the options.
+     *
+     * @param data
+     *      Encoded options
+     *
+     * @throws JSONException
+     *      If the data is truncated or of an unknown version
+     */
+    public static JSONObject decode (byte[] data) throws JSONException {
+        Reader in = new Reader(data);
+
+        if (in.readByte() != VERSION)
+            throw new JSONException("Unknown options encoding");
+
+        if (in.readByte() != OBJECT)
+            throw new JSONException("Options are not an object");
+
+        return in.readObject();
+    }
+
+    /**
+     * Write the value with its type tag.
+     *
+     * @param out
+     *      The output buffer
+     * @param value
+     *      Any JSON value
+     */
+    private static void writeValue (ByteArrayOutputStream out, Object value) {
+
+        if (value == null || value == JSONObject.NULL) {
+            out.write(NULL);
+        } else
+        if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else
+        if (value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            out.write(INT);
+            writeVarLong(out, zigZag(((Number) value).longValue()));
+        } else
+        if (value instanceof Long) {
+            out.write(LONG);
+            writeVarLong(out, zigZag((Long) value));
+        } else
+        if (value instanceof Number) {
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+
+            out.write(DOUBLE);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+        } else
+        if (value instanceof JSONObject) {
+            writeObject(out, (JSONObject) value);
+        } else
+        if (value instanceof JSONArray) {
+            JSONArray list = (JSONArray) value;
+
+            out.write(ARRAY);
+            writeVarLong(out, list.length());
+            for (int i = 0; i < list.length(); i++) {
+                writeValue(out, list.opt(i));
+            }
+        } else {
+            out.write(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    /**
+     * Write the object with its type tag.
+     *
+     * @param out
+     *      The output buffer
+     * @param dict
+     *      The JSON object
+     */
+    private static void writeObject (ByteArrayOutputStream out,
+                                     JSONObject dict) {
+
+        Iterator<?> keys = dict.keys();
+
+        out.write(OBJECT);
+        writeVarLong(out, dict.length());
+
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            int index  = indexOfKey(key);
+
+            writeVarLong(out, index + 1);
+
+            if (index < 0) {
+                writeString(out, key);
+            }
+
+            writeValue(out, dict.opt(key));
+        }
+    }
+
+    /**
+     * Write the string as length prefixed UTF-8.
+     *
+     * @param out
+     *      The output buffer
+     * @param str
+     *      The string to write
+     */
+    private static void writeString (ByteArrayOutputStream out, String str) {
+        byte[] bytes = toUTF8(str);
+
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Write the unsigned number using 7 bits per byte.
+     *
+     * @param out
+     *      The output buffer
+     * @param value
+     *      The number to write
+     */
+    private static void writeVarLong (ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.write((int) value);
+    }
+
+    /**
+     * Map signed to unsigned numbers so that small negative numbers stay
+     * small.
+     */
+    private static long zigZag (long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Index of the well-known key or -1.
+     */
+    private static int indexOfKey (String key) {
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].equals(key))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * UTF-8 bytes of the string.
+     */
+    private static byte[] toUTF8 (String str) {
+        try {
+            return str.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sequential reader over the encoded data.
+     */
+    private static final class Reader {
+
+        // The encoded data
+        private final byte[] data;
+
+        // Read position
+        private int pos = 0;
+
+        /**
+         * Constructor
+         *
+         * @param data
+         *      The encoded data
+         */
+        Reader (byte[] data) {
+            this.data = data;
+        }
+
+        /**
+         * Read the next value.
+         */
+        Object readValue () throws JSONException {
+            int tag = readByte();
+
+            switch (tag) {
+                case NULL:
+                    return JSONObject.NULL;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case INT:
+                    return (int) unZigZag(readVarLong());
+                case LONG:
+                    return unZigZag(readVarLong());
+                case DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return Double.longBitsToDouble(bits);
+                case STRING:
+                    return readString();
+                case OBJECT:
+                    return readObject();
+                case ARRAY:
+                    return readArray();
+                default:
+                    throw new JSONException("Unknown type tag " + tag);
+            }
+        }
+
+        /**
+         * Read the object after its type tag.
+         */
+        JSONObject readObject () throws JSONException {
+            int size = readLength();
+            JSONObject dict = new JSONObject();
+
+            for (int i = 0; i < size; i++) {
+                int index  = readLength() - 1;
+                String key;
+
+                if (index < 0) {
+                    key = readString();
+                } else if (index < KEYS.length) {
+                    key = KEYS[index];
+                } else {
+                    throw new JSONException("Unknown key index " + index);
+                }
+
+                dict.put(key, readValue());
+            }
+
+            return dict;
+        }
+
+        /**
+         * Read the array after its type tag.
+         */
+        JSONArray readArray () throws JSONException {
+            int size = readLength();
+            JSONArray list = new JSONArray();
+
+            for (int i = 0; i < size; i++) {
+                list.put(readValue());
+            }
+
+            return list;
+        }
+
+        /**
+         * Read a length prefixed UTF-8 string.
+         */
+        String readString () throws JSONException {
+            int length = readLength();
+
+            if (length > data.length - pos)
+                throw new JSONException("Truncated options");
+
+            try {
+                String str = new String(data, pos, length, "UTF-8");
+                pos += length;
+                return str;
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Read a varint used as length or count.
+         */
+        int readLength () throws JSONException {
+            long value = readVarLong();
+
+            if (value > Integer.MAX_VALUE)
+                throw new JSONException("Invalid length " + value);
+
+            return (int) value;
+        }
+
+        /**
+         * Read an unsigned number stored with 7 bits per byte.
+         */
+        long readVarLong () throws JSONException {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+
+            throw new JSONException("Malformed number");
+        }
+
+        /**
+         * Read the next byte as unsigned value.
+         */
+        int readByte () throws JSONException {
+            if (pos >= data.length)
+                throw new JSONException("Truncated options");
+
+            return data[pos++] & 0xFF;
+        }
+
+        /**
+         * Map zig-zag encoded to signed numbers.
+         */
+        private static long unZigZag (long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+}
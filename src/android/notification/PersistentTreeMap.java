@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable sorted map based on a persistent AVL tree. Each change returns
+ * a new map which shares all untouched nodes with the former one, so that
+ * put and remove cost O(log n) and a published map never changes. Range
+ * iteration costs O(log n + result size).
+ */
+final class PersistentTreeMap<K extends Comparable<K>, V> {
+
+    // The map without any entry
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final PersistentTreeMap EMPTY = new PersistentTreeMap(null, 0);
+
+    // Root node or null if empty
+    private final Node<K, V> root;
+
+    // Number of entries
+    private final int size;
+
+    /**
+     * Node of the tree, never modified once created.
+     */
+    private static final class Node<K, V> {
+
+        // The key
+        final K key;
+
+        // The value
+        final V value;
+
+        // Subtree with smaller keys
+        final Node<K, V> left;
+
+        // Subtree with greater keys
+        final Node<K, V> right;
+
+        // Height of the subtree
+        final int height;
+
+        Node (K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key    = key;
+            this.value  = value;
+            this.left   = left;
+            this.right  = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param root
+     *      Root node or null
+     * @param size
+     *      Number of entries
+     */
+    private PersistentTreeMap (Node<K, V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * The map without any entry.
+     */
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<K>, V> PersistentTreeMap<K, V> empty () {
+        return (PersistentTreeMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Number of entries.
+     */
+    int size () {
+        return size;
+    }
+
+    /**
+     * Height of the tree, at most about 1.44 * log2(size + 2).
+     */
+    int height () {
+        return height(root);
+    }
+
+    /**
+     * Value of the key or null.
+     *
+     * @param key
+     *      The key to look up
+     */
+    V get (K key) {
+        Node<K, V> node = root;
+
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+
+            if (cmp == 0)
+                return node.value;
+
+            node = cmp < 0 ? node.left : node.right;
+        }
+
+        return null;
+    }
+
+    /**
+     * If the map contains the key.
+     *
+     * @param key
+     *      The key to look up
+     */
+    boolean containsKey (K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * New map with the value stored under the key.
+     *
+     * @param key
+     *      The key
+     * @param value
+     *      The value, must not be null
+     */
+    PersistentTreeMap<K, V> put (K key, V value) {
+        int newSize = containsKey(key) ? size : size + 1;
+
+        return new PersistentTreeMap<K, V>(put(root, key, value), newSize);
+    }
+
+    /**
+     * New map without the key.
+     *
+     * @param key
+     *      The key to remove
+     */
+    PersistentTreeMap<K, V> remove (K key) {
+        Node<K, V> newRoot = remove(root, key);
+
+        if (newRoot == root)
+            return this;
+
+        return new PersistentTreeMap<K, V>(newRoot, size - 1);
+    }
+
+    /**
+     * Values of all entries in the order of their keys.
+     */
+    Iterator<V> values () {
+        return values(null, true, null, true);
+    }
+
+    /**
+     * Values of the entries within the key range in the order of their
+     * keys.
+     *
+     * @param from
+     *      Lower bound or null for none
+     * @param fromInclusive
+     *      If the lower bound is part of the range
+     * @param to
+     *      Upper bound or null for none
+     * @param toInclusive
+     *      If the upper bound is part of the range
+     */
+    Iterator<V> values (K from, boolean fromInclusive,
+                        K to, boolean toInclusive) {
+        return new RangeIterator<K, V>(root, from, fromInclusive,
+                to, toInclusive);
+    }
+
+    /**
+     * In-order iterator over a key range. Keeps the path to the next node
+     * on a stack.
+     */
+    private static final class RangeIterator<K extends Comparable<K>, V>
+            implements Iterator<V> {
+
+        // Path to the next node
+        private final Deque<Node<K, V>> stack = new ArrayDeque<Node<K, V>>();
+
+        // Upper bound or null for none
+        private final K to;
+
+        // If the upper bound is part of the range
+        private final boolean toInclusive;
+
+        RangeIterator (Node<K, V> root, K from, boolean fromInclusive,
+                       K to, boolean toInclusive) {
+            this.to          = to;
+            this.toInclusive = toInclusive;
+
+            Node<K, V> node = root;
+
+            while (node != null) {
+                int cmp = from == null ? 1 : node.key.compareTo(from);
+
+                if (cmp > 0 || (cmp == 0 && fromInclusive)) {
+                    stack.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext () {
+            if (stack.isEmpty())
+                return false;
+
+            if (to == null)
+                return true;
+
+            int cmp = stack.peek().key.compareTo(to);
+
+            return cmp < 0 || (cmp == 0 && toInclusive);
+        }
+
+        @Override
+        public V next () {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Node<K, V> node = stack.pop();
+
+            for (Node<K, V> n = node.right; n != null; n = n.left) {
+                stack.push(n);
+            }
+
+            return node.value;
+        }
+
+        @Override
+        public void remove () {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Height of the subtree.
+     */
+    private static int height (Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Subtree with the value stored under the key.
+     */
+    private static <K extends Comparable<K>, V> Node<K, V> put (
+            Node<K, V> node, K key, V value) {
+
+        if (node == null)
+            return new Node<K, V>(key, value, null, null);
+
+        int cmp = key.compareTo(node.key);
+
+        if (cmp < 0)
+            return balance(node.key, node.value, put(node.left, key, value), node.right);
+
+        if (cmp > 0)
+            return balance(node.key, node.value, node.left, put(node.right, key, value));
+
+        return new Node<K, V>(key, value, node.left, node.right);
+    }
+
+    /**
+     * Subtree without the key, the same node if the key is absent.
+     */
+    private static <K extends Comparable<K>, V> Node<K, V> remove (
+            Node<K, V> node, K key) {
+
+        if (node == null)
+            return null;
+
+        int cmp = key.compareTo(node.key);
+
+        if (cmp < 0) {
+            Node<K, V> left = remove(node.left, key);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+
+        if (cmp > 0) {
+            Node<K, V> right = remove(node.right, key);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+
+        if (node.left == null)
+            return node.right;
+
+        if (node.right == null)
+            return node.left;
+
+        Node<K, V> min = node.right;
+
+        while (min.left != null) {
+            min = min.left;
+        }
+
+        return balance(min.key, min.value, node.left, removeMin(node.right));
+    }
+
+    /**
+     * Subtree without its smallest key.
+     */
+    private static <K extends Comparable<K>, V> Node<K, V> removeMin (
+            Node<K, V> node) {
+
+        if (node.left == null)
+            return node.right;
+
+        return balance(node.key, node.value, removeMin(node.left), node.right);
+    }
+
+    /**
+     * New node with rotations applied if the heights of the subtrees
+     * differ by more than one.
+     */
+    private static <K extends Comparable<K>, V> Node<K, V> balance (
+            K key, V value, Node<K, V> left, Node<K, V> right) {
+
+        int hl = height(left);
+        int hr = height(right);
+
+        if (hl > hr + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<K, V>(left.key, left.value, left.left,
+                        new Node<K, V>(key, value, left.right, right));
+            }
+
+            Node<K, V> lr = left.right;
+
+            return new Node<K, V>(lr.key, lr.value,
+                    new Node<K, V>(left.key, left.value, left.left, lr.left),
+                    new Node<K, V>(key, value, lr.right, right));
+        }
+
+        if (hr > hl + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<K, V>(right.key, right.value,
+                        new Node<K, V>(key, value, left, right.left),
+                        right.right);
+            }
+
+            Node<K, V> rl = right.left;
+
+            return new Node<K, V>(rl.key, rl.value,
+                    new Node<K, V>(key, value, left, rl.left),
+                    new Node<K, V>(right.key, right.value, rl.right, right.right));
+        }
+
+        return new Node<K, V>(key, value, left, right);
+    }
+
+}
@@ -0,0 +1,620 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Process-wide registry of all persisted local notifications. Loads the
+ * store once and keeps a record of each notification in memory, so that
+ * lookups by ID don't have to re-read and re-parse the persisted data. All
+ * writes go through the registry to keep both views consistent.
+ *
+ * The state is an immutable snapshot built from persistent maps. Readers
+ * grab the current snapshot without locking and answer a whole query from
+ * it. Each write derives the next snapshot in O(log n) per notification
+ * and publishes it. The matching store write of the published records
+ * gets queued in the same order and applied before the write returns, so
+ * the store ends up in the same state as the memory regardless of the
+ * calling threads.
+ *
+ * Callers which read, modify and write a notification use replace, which
+ * fails if the notification has been changed or removed in between, e.g.
+ * by a receiver which doesn't run on the writer lane of the notification.
+ */
+class Registry {
+
+    // The single instance per process
+    private static Registry instance;
+
+    // Storage layer to persist the notifications
+    private final Store store;
+
+    // Serializes the writers to the snapshot
+    private final Object writeLock = new Object();
+
+    // Serializes the writes to the store
+    private final Object storeLock = new Object();
+
+    // Store writes in the order of the published snapshots
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+
+    // Current state, replaced by every write
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * Immutable version of the state of all registered notifications.
+     */
+    static final class Snapshot {
+
+        // The snapshot without any notification
+        static final Snapshot EMPTY = new Snapshot(
+                PersistentTreeMap.<Integer, NotificationRecord>empty(),
+                PersistentTreeMap.<TriggerKey, NotificationRecord>empty(),
+                PersistentTreeMap.<Integer, NotificationRecord>empty());
+
+        // Records keyed by notification ID
+        private final PersistentTreeMap<Integer, NotificationRecord> entries;
+
+        // Non-repeating records ordered by their trigger time
+        private final PersistentTreeMap<TriggerKey, NotificationRecord> triggers;
+
+        // Repeating records keyed by notification ID
+        private final PersistentTreeMap<Integer, NotificationRecord> repeating;
+
+        /**
+         * Constructor
+         *
+         * @param entries
+         *      Records keyed by notification ID
+         * @param triggers
+         *      Non-repeating records ordered by their trigger time
+         * @param repeating
+         *      Repeating records keyed by notification ID
+         */
+        private Snapshot (PersistentTreeMap<Integer, NotificationRecord> entries,
+                          PersistentTreeMap<TriggerKey, NotificationRecord> triggers,
+                          PersistentTreeMap<Integer, NotificationRecord> repeating) {
+
+            this.entries   = entries;
+            this.triggers  = triggers;
+            this.repeating = repeating;
+        }
+
+        /**
+         * Number of registered notifications.
+         */
+        int size () {
+            return entries.size();
+        }
+
+        /**
+         * Record of the notification with the given ID.
+         *
+         * @param id
+         *      Notification ID
+         *
+         * @return
+         *      null if no such notification exists
+         */
+        NotificationRecord get (int id) {
+            return entries.get(id);
+        }
+
+        /**
+         * If a notification with the given ID exists.
+         *
+         * @param id
+         *      Notification ID
+         */
+        boolean contains (int id) {
+            return entries.containsKey(id);
+        }
+
+        /**
+         * Records of all notifications from given type. Scheduled are all
+         * repeating notifications and those with a trigger time not in the
+         * past, all others are triggered. Costs O(log n) plus the size of
+         * the result.
+         *
+         * @param type
+         *      The notification life cycle type
+         * @param now
+         *      Time to decide between scheduled and triggered
+         */
+        Iterator<NotificationRecord> records (Notification.Type type, long now) {
+            TriggerKey bound = new TriggerKey(now, Integer.MIN_VALUE);
+
+            switch (type) {
+                case SCHEDULED:
+                    return concat(repeating.values(),
+                            triggers.values(bound, true, null, true));
+                case TRIGGERED:
+                    return triggers.values(null, true, bound, false);
+                default:
+                    return entries.values();
+            }
+        }
+
+        /**
+         * IDs of all notifications from given type.
+         *
+         * @param type
+         *      The notification life cycle type
+         * @param now
+         *      Time to decide between scheduled and triggered
+         */
+        List<Integer> getIds (Notification.Type type, long now) {
+            Iterator<NotificationRecord> it = records(type, now);
+            List<Integer> ids = new ArrayList<Integer>();
+
+            while (it.hasNext()) {
+                ids.add(it.next().getId());
+            }
+
+            return ids;
+        }
+
+        /**
+         * Same state with the notification added or replaced.
+         *
+         * @param record
+         *      Notification record
+         */
+        Snapshot add (NotificationRecord record) {
+            return delete(record.getId()).put(record);
+        }
+
+        /**
+         * Same state without the notification.
+         *
+         * @param id
+         *      Notification ID
+         */
+        Snapshot delete (int id) {
+            NotificationRecord record = entries.get(id);
+
+            if (record == null)
+                return this;
+
+            if (record.isRepeating()) {
+                return new Snapshot(entries.remove(id),
+                        triggers, repeating.remove(id));
+            }
+
+            TriggerKey key = new TriggerKey(record.getTriggerTime(), id);
+
+            return new Snapshot(entries.remove(id),
+                    triggers.remove(key), repeating);
+        }
+
+        /**
+         * Same state with the record, which must not be present yet.
+         *
+         * @param record
+         *      Notification record
+         */
+        private Snapshot put (NotificationRecord record) {
+            int id = record.getId();
+
+            if (record.isRepeating()) {
+                return new Snapshot(entries.put(id, record),
+                        triggers, repeating.put(id, record));
+            }
+
+            TriggerKey key = new TriggerKey(record.getTriggerTime(), id);
+
+            return new Snapshot(entries.put(id, record),
+                    triggers.put(key, record), repeating);
+        }
+    }
+
+    /**
+     * Key of the trigger index, ordered by trigger time and then by ID.
+     */
+    private static final class TriggerKey implements Comparable<TriggerKey> {
+
+        // Trigger time in milliseconds
+        final long time;
+
+        // Notification ID
+        final int id;
+
+        TriggerKey (long time, int id) {
+            this.time = time;
+            this.id   = id;
+        }
+
+        @Override
+        public int compareTo (TriggerKey other) {
+            if (time != other.time)
+                return time < other.time ? -1 : 1;
+
+            return id < other.id ? -1 : (id == other.id ? 0 : 1);
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param store
+     *      Storage layer to persist the notifications
+     */
+    private Registry (Store store) {
+        this.store = store;
+        load();
+    }
+
+    /**
+     * Static method to retrieve the shared instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static synchronized Registry getInstance (Context context) {
+        if (instance == null) {
+            Context ctx = context.getApplicationContext();
+            instance    = new Registry(new SQLiteStore(ctx));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Read all persisted notifications into memory.
+     */
+    private void load () {
+        Snapshot next = Snapshot.EMPTY;
+
+        for (NotificationRecord record : store.load()) {
+            next = next.add(record);
+        }
+
+        snapshot = next;
+    }
+
+    /**
+     * Current snapshot of all registered notifications. Answer a query
+     * from one snapshot to get a consistent view.
+     */
+    Snapshot snapshot () {
+        return snapshot;
+    }
+
+    /**
+     * Record of the notification with the given ID.
+     *
+     * @param id
+     *      Notification ID
+     *
+     * @return
+     *      null if no such notification exists
+     */
+    NotificationRecord get (int id) {
+        return snapshot.get(id);
+    }
+
+    /**
+     * If a notification with the given ID exists.
+     *
+     * @param id
+     *      Notification ID
+     */
+    boolean contains (int id) {
+        return snapshot.contains(id);
+    }
+
+    /**
+     * IDs of all registered notifications.
+     */
+    List<Integer> getIds () {
+        return getIds(Notification.Type.ALL);
+    }
+
+    /**
+     * IDs of all registered notifications from given type. Scheduled are
+     * all repeating notifications and those with a trigger time not in the
+     * past, all others are triggered.
+     *
+     * @param type
+     *      The notification life cycle type
+     */
+    List<Integer> getIds (Notification.Type type) {
+        return snapshot.getIds(type, System.currentTimeMillis());
+    }
+
+    /**
+     * If the notification is from given type.
+     *
+     * @param id
+     *      Notification ID
+     * @param type
+     *      The notification life cycle type
+     */
+    boolean isType (int id, Notification.Type type) {
+        NotificationRecord record = get(id);
+
+        if (record == null)
+            return false;
+
+        if (type == Notification.Type.ALL)
+            return true;
+
+        boolean scheduled = record.isScheduled(System.currentTimeMillis());
+
+        return scheduled == (type == Notification.Type.SCHEDULED);
+    }
+
+    /**
+     * Records of all registered notifications.
+     */
+    List<NotificationRecord> getAll () {
+        Snapshot current = snapshot;
+        List<NotificationRecord> list = new ArrayList<NotificationRecord>(current.size());
+        Iterator<NotificationRecord> it = current.records(Notification.Type.ALL, 0);
+
+        while (it.hasNext()) {
+            list.add(it.next());
+        }
+
+        return list;
+    }
+
+    /**
+     * Records of the registered notifications with the given IDs. Skips
+     * IDs without a notification.
+     *
+     * @param ids
+     *      Set of notification IDs
+     */
+    List<NotificationRecord> getAll (List<Integer> ids) {
+        Snapshot current = snapshot;
+        List<NotificationRecord> list = new ArrayList<NotificationRecord>(ids.size());
+
+        for (int id : ids) {
+            NotificationRecord record = current.get(id);
+
+            if (record != null) {
+                list.add(record);
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * Add or replace the notification and persist it.
+     *
+     * @param options
+     *      Notification options
+     */
+    void put (Options options) {
+        final NotificationRecord record = options.toRecord();
+
+        synchronized (writeLock) {
+            publish(snapshot.add(record));
+
+            pending.add(new Runnable() {
+                @Override
+                public void run() {
+                    store.put(record);
+                }
+            });
+        }
+
+        flush();
+    }
+
+    /**
+     * Replace the notification and persist it, but only if its record is
+     * still the expected one.
+     *
+     * @param expected
+     *      The record the options have been derived from
+     * @param options
+     *      Notification options
+     *
+     * @return
+     *      false if the notification has been changed or removed since
+     */
+    boolean replace (NotificationRecord expected, Options options) {
+        final NotificationRecord record = options.toRecord();
+
+        synchronized (writeLock) {
+            if (snapshot.get(expected.getId()) != expected)
+                return false;
+
+            publish(snapshot.delete(expected.getId()).add(record));
+
+            pending.add(new Runnable() {
+                @Override
+                public void run() {
+                    store.put(record);
+                }
+            });
+        }
+
+        flush();
+
+        return true;
+    }
+
+    /**
+     * Add or replace the notifications and persist them at once.
+     *
+     * @param options
+     *      Set of notification options
+     */
+    void putAll (List<Options> options) {
+        final List<NotificationRecord> records =
+                new ArrayList<NotificationRecord>(options.size());
+
+        for (Options opts : options) {
+            records.add(opts.toRecord());
+        }
+
+        synchronized (writeLock) {
+            Snapshot next = snapshot;
+
+            for (NotificationRecord record : records) {
+                next = next.add(record);
+            }
+
+            publish(next);
+
+            pending.add(new Runnable() {
+                @Override
+                public void run() {
+                    store.putAll(records);
+                }
+            });
+        }
+
+        flush();
+    }
+
+    /**
+     * Remove the notification and its persisted state.
+     *
+     * @param id
+     *      Notification ID
+     */
+    void remove (final int id) {
+        synchronized (writeLock) {
+            publish(snapshot.delete(id));
+
+            pending.add(new Runnable() {
+                @Override
+                public void run() {
+                    store.remove(id);
+                }
+            });
+        }
+
+        flush();
+    }
+
+    /**
+     * Remove the notifications and their persisted state at once.
+     *
+     * @param ids
+     *      Set of notification IDs
+     */
+    void removeAll (final List<Integer> ids) {
+
+        if (ids.isEmpty())
+            return;
+
+        synchronized (writeLock) {
+            Snapshot next = snapshot;
+
+            for (int id : ids) {
+                next = next.delete(id);
+            }
+
+            publish(next);
+
+            pending.add(new Runnable() {
+                @Override
+                public void run() {
+                    store.removeAll(ids);
+                }
+            });
+        }
+
+        flush();
+    }
+
+    /**
+     * Apply the queued store writes in their order. The writes of other
+     * threads queued before might get applied as well, but the own write
+     * is applied once this returns.
+     */
+    private void flush () {
+        synchronized (storeLock) {
+            Runnable write;
+
+            while ((write = pending.poll()) != null) {
+                write.run();
+            }
+        }
+    }
+
+    /**
+     * Publish the state unless nothing changed. Has to be called while
+     * holding the write lock.
+     *
+     * @param next
+     *      State derived from the current snapshot
+     */
+    private void publish (Snapshot next) {
+
+        if (next != snapshot) {
+            snapshot = next;
+        }
+    }
+
+    /**
+     * Iterator over the elements of the first and then of the second
+     * iterator.
+     *
+     * @param first
+     *      Iterator to start with
+     * @param second
+     *      Iterator to continue with
+     */
+    private static <T> Iterator<T> concat (final Iterator<T> first,
+                                           final Iterator<T> second) {
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext () {
+                return first.hasNext() || second.hasNext();
+            }
+
+            @Override
+            public T next () {
+                if (first.hasNext())
+                    return first.next();
+
+                if (second.hasNext())
+                    return second.next();
+
+                throw new NoSuchElementException();
+            }
+
+            @Override
+            public void remove () {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
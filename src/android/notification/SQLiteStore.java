@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static de.appplant.cordova.plugin.notification.Notification.PREF_KEY;
+
+/**
+ * SQLite based store with one row per local notification. Trigger time,
+ * type and repeat interval are kept in indexed columns next to the JSON
+ * encoded options. Batch writes are wrapped into a single transaction.
+ */
+class SQLiteStore extends SQLiteOpenHelper implements Store {
+
+    // Name of the database file
+    private static final String DB_NAME = "localnotification.db";
+
+    // Version of the database schema
+    private static final int DB_VERSION = 1;
+
+    // Name of the table
+    static final String TABLE = "notifications";
+
+    // Column names
+    static final String COL_ID       = "id";
+    static final String COL_TRIGGER  = "trigger_at";
+    static final String COL_TYPE     = "type";
+    static final String COL_INTERVAL = "interval";
+    static final String COL_OPTIONS  = "options";
+
+    // Application context passed by constructor
+    private final Context context;
+
+    // If the preferences of former versions have been migrated by onCreate
+    private boolean migrated = false;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    SQLiteStore (Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        this.context = context;
+    }
+
+    /**
+     * Create the schema and migrate the notifications which have been
+     * persisted to the shared preferences by former versions.
+     *
+     * @param db
+     *      The database
+     */
+    @Override
+    public void onCreate (SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_ID       + " INTEGER PRIMARY KEY, "
+                + COL_TRIGGER  + " INTEGER NOT NULL, "
+                + COL_TYPE     + " TEXT NOT NULL, "
+                + COL_INTERVAL + " INTEGER NOT NULL, "
+                + COL_OPTIONS  + " TEXT NOT NULL)");
+
+        db.execSQL("CREATE INDEX idx_trigger ON " + TABLE
+                + " (" + COL_TRIGGER + ")");
+        db.execSQL("CREATE INDEX idx_type ON " + TABLE
+                + " (" + COL_TYPE + ")");
+        db.execSQL("CREATE INDEX idx_interval ON " + TABLE
+                + " (" + COL_INTERVAL + ")");
+
+        migrate(db);
+    }
+
+    /**
+     * Called when the schema version has been increased.
+     *
+     * @param db
+     *      The database
+     * @param oldVersion
+     *      Schema version of the existing database
+     * @param newVersion
+     *      Schema version of the store
+     */
+    @Override
+    public void onUpgrade (SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Nothing to do yet
+    }
+
+    /**
+     * Remove the preferences of former versions once their notifications
+     * have been migrated. Called after the transaction of onCreate has
+     * been committed, so that a failed migration doesn't lose them.
+     *
+     * @param db
+     *      The database
+     */
+    @Override
+    public void onOpen (SQLiteDatabase db) {
+
+        if (!migrated)
+            return;
+
+        migrated = false;
+        getLegacyPrefs().edit().clear().commit();
+    }
+
+    /**
+     * Move all notifications from the shared preferences into the table.
+     * Runs within the transaction of onCreate. Reads the plain JSON values
+     * only, the options get parsed once the notifications are used.
+     *
+     * @param db
+     *      The database
+     */
+    private void migrate (SQLiteDatabase db) {
+        Map<String, ?> alarms = getLegacyPrefs().getAll();
+
+        if (alarms.isEmpty())
+            return;
+
+        for (Object alarm : alarms.values()) {
+            try {
+                JSONObject dict = new JSONObject(alarm.toString());
+
+                insert(db, dict.optInt("id", 0),
+                        dict.optLong("at", 0) * 1000,
+                        dict.optString("type", ""),
+                        Options.parseInterval(dict.optString("every")),
+                        dict.toString());
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
+        migrated = true;
+    }
+
+    /**
+     * Private preferences used by former versions.
+     */
+    private SharedPreferences getLegacyPrefs () {
+        return context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Read all persisted notifications.
+     */
+    @Override
+    public List<NotificationRecord> load () {
+        List<NotificationRecord> list = new ArrayList<NotificationRecord>();
+        Cursor cursor = getReadableDatabase().query(TABLE, new String[] {
+                COL_ID, COL_TRIGGER, COL_INTERVAL, COL_TYPE, COL_OPTIONS },
+                null, null, null, null, null);
+
+        try {
+            while (cursor.moveToNext()) {
+                list.add(new NotificationRecord(cursor.getInt(0),
+                        cursor.getLong(1), cursor.getLong(2),
+                        cursor.getString(3), cursor.getString(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return list;
+    }
+
+    /**
+     * Add or replace a single notification.
+     *
+     * @param record
+     *      Notification record
+     */
+    @Override
+    public void put (NotificationRecord record) {
+        insert(getWritableDatabase(), record);
+    }
+
+    /**
+     * Add or replace multiple notifications within one transaction.
+     *
+     * @param records
+     *      Set of notification records
+     */
+    @Override
+    public void putAll (List<NotificationRecord> records) {
+        SQLiteDatabase db = getWritableDatabase();
+
+        db.beginTransaction();
+
+        try {
+            for (NotificationRecord record : records) {
+                insert(db, record);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Remove a single notification.
+     *
+     * @param id
+     *      Notification ID
+     */
+    @Override
+    public void remove (int id) {
+        getWritableDatabase().delete(TABLE, COL_ID + "=?",
+                new String[] { Integer.toString(id) });
+    }
+
+    /**
+     * Remove multiple notifications within one transaction.
+     *
+     * @param ids
+     *      Set of notification IDs
+     */
+    @Override
+    public void removeAll (List<Integer> ids) {
+        SQLiteDatabase db = getWritableDatabase();
+
+        db.beginTransaction();
+
+        try {
+            for (int id : ids) {
+                db.delete(TABLE, COL_ID + "=?",
+                        new String[] { Integer.toString(id) });
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Insert or replace the row of the notification.
+     *
+     * @param db
+     *      The database
+     * @param record
+     *      Notification record
+     */
+    private void insert (SQLiteDatabase db, NotificationRecord record) {
+        insert(db, record.getId(), record.getTriggerTime(),
+                record.getType(), record.getRepeatInterval(),
+                record.getJSON());
+    }
+
+    /**
+     * Insert or replace the row of the notification.
+     *
+     * @param db
+     *      The database
+     * @param id
+     *      Notification ID
+     * @param trigger
+     *      Trigger time in milliseconds
+     * @param type
+     *      Type like download or media
+     * @param interval
+     *      Repeat interval in milliseconds
+     * @param json
+     *      JSON encoded options
+     */
+    private static void insert (SQLiteDatabase db, int id, long trigger,
+                                String type, long interval, String json) {
+
+        ContentValues values = new ContentValues(5);
+
+        values.put(COL_ID, id);
+        values.put(COL_TRIGGER, trigger);
+        values.put(COL_TYPE, type);
+        values.put(COL_INTERVAL, interval);
+        values.put(COL_OPTIONS, json);
+
+        db.insertWithOnConflict(TABLE, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scheduler mode which registers only one alarm for the earliest due
+ * notification instead of one alarm per notification. The pending
+ * notifications are kept in a time-ordered queue built from the store.
+ * When the alarm fires, the trigger receiver drains all due entries and
+ * the alarm gets re-armed for the next one. The time up to which the
+ * entries have been drained is persisted, so that a process started by the
+ * alarm still delivers the entries which became due in between.
+ */
+public class Scheduler {
+
+    // Action of the intent fired by the single alarm
+    static final String ACTION_DUE = "de.appplant.action_due";
+
+    // Key for private preferences
+    private static final String PREF_KEY = "LocalNotification.Scheduler";
+
+    // Preference key of the mode flag
+    private static final String KEY_ENABLED = "singleAlarm";
+
+    // Preference key of the time up to which all due entries were drained
+    private static final String KEY_DRAINED = "drainedUntil";
+
+    // The single instance per process
+    private static Scheduler instance;
+
+    // Application context passed by constructor
+    private final Context context;
+
+    // Pending notifications ordered by their next due time
+    private DueQueue queue;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    private Scheduler (Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Static method to retrieve the shared instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static synchronized Scheduler getInstance (Context context) {
+        if (instance == null) {
+            instance = new Scheduler(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    /**
+     * If the single alarm mode is turned on.
+     *
+     * @param context
+     *      Application context
+     */
+    static boolean isEnabled (Context context) {
+        return getPrefs(context).getBoolean(KEY_ENABLED, false);
+    }
+
+    /**
+     * Turn the single alarm mode on or off. Moves the alarms of all
+     * persisted notifications to the new mode.
+     *
+     * @param context
+     *      Application context
+     * @param enabled
+     *      true to register one alarm for the earliest due notification
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    public static synchronized void setEnabled (Context context,
+                                                boolean enabled,
+                                                Class<?> receiver) {
+
+        if (isEnabled(context) == enabled)
+            return;
+
+        getPrefs(context).edit()
+                .putBoolean(KEY_ENABLED, enabled)
+                .putLong(KEY_DRAINED, System.currentTimeMillis())
+                .commit();
+
+        Scheduler scheduler = getInstance(context);
+        List<NotificationRecord> all = Registry.getInstance(context).getAll();
+
+        for (NotificationRecord record : all) {
+            JSONObject dict = record.toJSONObject();
+
+            if (record.isShownImmediately() || dict == null)
+                continue;
+
+            Options options = new Options(context).parse(dict);
+            Notification notification =
+                    new Notification(context, options, null, receiver);
+
+            if (enabled) {
+                notification.cancelAlarm();
+            } else if (notification.isScheduled()) {
+                notification.scheduleAlarm();
+            }
+        }
+
+        synchronized (scheduler) {
+            scheduler.queue = null;
+
+            if (enabled) {
+                scheduler.arm(receiver);
+            } else {
+                scheduler.getAlarmMgr().cancel(scheduler.getIntent(receiver, 0));
+            }
+        }
+    }
+
+    /**
+     * Add the notification to the queue and re-arm the alarm.
+     *
+     * @param options
+     *      Notification options
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    synchronized void add (Options options, Class<?> receiver) {
+        DueQueue queue = getQueue();
+        long trigger  = options.getTriggerTime();
+        long interval = options.getRepeatInterval();
+
+        // Don't make up for missed occurrences of repeating notifications
+        if (interval > 0) {
+            trigger = DueQueue.getNextDue(trigger, interval,
+                    System.currentTimeMillis());
+        }
+
+        queue.remove(options.getId());
+        queue.add(options.getId(), trigger);
+
+        arm(receiver);
+    }
+
+    /**
+     * Remove the notification from the queue and re-arm the alarm.
+     *
+     * @param id
+     *      Notification ID
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    synchronized void remove (int id, Class<?> receiver) {
+        if (getQueue().remove(id)) {
+            arm(receiver);
+        }
+    }
+
+    /**
+     * Remove the notifications from the queue and re-arm the alarm once.
+     *
+     * @param ids
+     *      Set of notification IDs
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    synchronized void removeAll (List<Integer> ids, Class<?> receiver) {
+        DueQueue queue = getQueue();
+        boolean removed = false;
+
+        for (int id : ids) {
+            removed |= queue.remove(id);
+        }
+
+        if (removed) {
+            arm(receiver);
+        }
+    }
+
+    /**
+     * Take all due notifications from the queue. Repeating notifications
+     * get queued again with their next due time. Re-arms the alarm for the
+     * next pending notification.
+     *
+     * @param receiver
+     *      Receiver to handle the trigger event
+     *
+     * @return
+     *      IDs of all due notifications
+     */
+    synchronized List<Integer> drain (Class<?> receiver) {
+        DueQueue queue = getQueue();
+        Registry registry = Registry.getInstance(context);
+        List<Integer> ids = new ArrayList<Integer>();
+        List<DueQueue.Entry> repeating = new ArrayList<DueQueue.Entry>();
+        long now = System.currentTimeMillis();
+
+        while (!queue.isEmpty() && queue.peek().due <= now) {
+            DueQueue.Entry entry = queue.poll();
+            NotificationRecord record = registry.get(entry.id);
+
+            if (record == null)
+                continue;
+
+            ids.add(entry.id);
+
+            long interval = record.getRepeatInterval();
+
+            if (interval > 0) {
+                repeating.add(new DueQueue.Entry(entry.id,
+                        DueQueue.getNextDue(entry.due, interval, now + 1)));
+            }
+        }
+
+        for (DueQueue.Entry entry : repeating) {
+            queue.add(entry.id, entry.due);
+        }
+
+        getPrefs(context).edit().putLong(KEY_DRAINED, now).commit();
+        arm(receiver);
+
+        return ids;
+    }
+
+    /**
+     * Register the alarm for the earliest due notification or cancel the
+     * alarm if nothing is pending.
+     *
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    private void arm (Class<?> receiver) {
+        DueQueue.Entry next = getQueue().peek();
+
+        if (next == null) {
+            getAlarmMgr().cancel(getIntent(receiver, 0));
+            return;
+        }
+
+        PendingIntent pi = getIntent(receiver, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        getAlarmMgr().set(AlarmManager.RTC_WAKEUP, next.due, pi);
+    }
+
+    /**
+     * The queue of pending notifications. Gets build from the store on first
+     * access, e.g. after the process has been started by the alarm.
+     */
+    private DueQueue getQueue () {
+        if (queue != null)
+            return queue;
+
+        List<NotificationRecord> all = Registry.getInstance(context).getAll();
+        long drained = getPrefs(context).getLong(KEY_DRAINED,
+                System.currentTimeMillis());
+
+        queue = DueQueue.build(all, drained);
+
+        return queue;
+    }
+
+    /**
+     * The pending intent of the single alarm.
+     *
+     * @param receiver
+     *      Receiver to handle the trigger event
+     * @param flags
+     *      Pending intent flags
+     */
+    private PendingIntent getIntent (Class<?> receiver, int flags) {
+        Intent intent = new Intent(context, receiver)
+                .setAction(ACTION_DUE);
+
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+
+    /**
+     * Alarm manager for the application.
+     */
+    private AlarmManager getAlarmMgr () {
+        return (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+
+    /**
+     * Shared private preferences for the scheduler.
+     *
+     * @param context
+     *      Application context
+     */
+    private static SharedPreferences getPrefs (Context context) {
+        return context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    }
+
+}
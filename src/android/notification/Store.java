@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import java.util.List;
+
+/**
+ * Storage layer behind the registry. Implementations persist the options
+ * of each local notification, so that they survive app restarts and device
+ * reboots. Batch methods are expected to write all changes at once.
+ */
+interface Store {
+
+    /**
+     * Read all persisted notifications.
+     */
+    List<NotificationRecord> load ();
+
+    /**
+     * Add or replace a single notification.
+     *
+     * @param record
+     *      Notification record
+     */
+    void put (NotificationRecord record);
+
+    /**
+     * Add or replace multiple notifications at once.
+     *
+     * @param records
+     *      Set of notification records
+     */
+    void putAll (List<NotificationRecord> records);
+
+    /**
+     * Remove a single notification.
+     *
+     * @param id
+     *      Notification ID
+     */
+    void remove (int id);
+
+    /**
+     * Remove multiple notifications at once.
+     *
+     * @param ids
+     *      Set of notification IDs
+     */
+    void removeAll (List<Integer> ids);
+
+}
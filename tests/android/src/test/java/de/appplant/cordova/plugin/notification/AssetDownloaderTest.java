@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Downloads against a local HTTP server.
+ */
+public class AssetDownloaderTest {
+
+    // Content served for the icon
+    private static final byte[] ICON = "icon-content".getBytes();
+
+    // ETag of the served icon
+    private static final String ETAG = "\"v1\"";
+
+    // Number of requests answered with the content
+    private final AtomicInteger served = new AtomicInteger();
+
+    // Number of requests answered with not modified
+    private final AtomicInteger revalidated = new AtomicInteger();
+
+    // Holds back the responses until released
+    private CountDownLatch gate;
+
+    // The local server
+    private HttpServer server;
+
+    // The cache directory
+    private File dir;
+
+    @Before
+    public void setUp () throws IOException {
+        gate   = new CountDownLatch(0);
+        dir    = File.createTempFile("assets", "");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+
+        server.createContext("/icon.png", new HttpHandler() {
+            @Override
+            public void handle (HttpExchange exchange) throws IOException {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    revalidated.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+
+                served.incrementAndGet();
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                exchange.sendResponseHeaders(200, ICON.length);
+
+                OutputStream out = exchange.getResponseBody();
+                out.write(ICON);
+                out.close();
+            }
+        });
+
+        server.start();
+    }
+
+    @After
+    public void tearDown () {
+        server.stop(0);
+
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    @Test
+    public void coalescesRequestsForTheSameUrl () throws Exception {
+        AssetDownloader downloader = new AssetDownloader(2);
+        AssetCache cache = new AssetCache(dir);
+
+        gate = new CountDownLatch(1);
+
+        AssetDownloader.Download first  = downloader.download(cache, url(), ".png");
+        AssetDownloader.Download second = downloader.download(cache, url(), ".png");
+
+        gate.countDown();
+
+        assertSame(first, second);
+        assertContent(first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, served.get());
+    }
+
+    @Test
+    public void informsListenersOnceDone () throws Exception {
+        AssetDownloader downloader = new AssetDownloader(1);
+        final CountDownLatch done  = new CountDownLatch(2);
+
+        gate = new CountDownLatch(1);
+
+        AssetDownloader.Download download =
+                downloader.download(new AssetCache(dir), url(), ".png");
+
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+
+        download.addListener(listener);
+        assertEquals(2, done.getCount());
+
+        gate.countDown();
+        download.get(5, TimeUnit.SECONDS);
+        download.addListener(listener);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void revalidatesCachedFiles () throws Exception {
+        AssetCache cache = new AssetCache(dir);
+
+        new AssetDownloader(1).download(cache, url(), ".png")
+                .get(5, TimeUnit.SECONDS);
+
+        File file = new AssetDownloader(1).download(cache, url(), ".png")
+                .get(5, TimeUnit.SECONDS);
+
+        assertContent(file);
+        assertEquals(1, served.get());
+        assertEquals(1, revalidated.get());
+    }
+
+    /**
+     * URL of the icon served by the local server.
+     */
+    private String url () {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/icon.png";
+    }
+
+    /**
+     * Assert that the file contains the served icon.
+     */
+    private static void assertContent (File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+
+        try {
+            assertEquals(ICON.length, in.read(content));
+        } finally {
+            in.close();
+        }
+
+        assertEquals(new String(ICON), new String(content));
+    }
+
+}
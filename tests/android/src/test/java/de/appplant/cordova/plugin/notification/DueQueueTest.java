@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rebuild of the scheduler queue in a process which got started by the
+ * single alarm after the former one had been killed.
+ */
+public class DueQueueTest {
+
+    // Interval of repeating notifications
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void keepsEntriesDueSinceTheLastDrain () {
+        long armed = 1000000;
+        long now   = armed + 5 * MINUTE;
+
+        List<NotificationRecord> records = new ArrayList<NotificationRecord>();
+        records.add(record(1, armed + MINUTE, 0));
+        records.add(record(2, now + MINUTE, 0));
+
+        // Process got killed after arming, the alarm starts a new one
+        DueQueue queue = DueQueue.build(records, armed);
+
+        DueQueue.Entry first = queue.poll();
+
+        assertEquals(1, first.id);
+        assertEquals(armed + MINUTE, first.due);
+        assertTrue(first.due <= now);
+        assertEquals(2, queue.poll().id);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void skipsEntriesDrainedBefore () {
+        long drained = 1000000;
+
+        List<NotificationRecord> records = new ArrayList<NotificationRecord>();
+        records.add(record(1, drained - MINUTE, 0));
+        records.add(record(2, drained, 0));
+
+        assertTrue(DueQueue.build(records, drained).isEmpty());
+    }
+
+    @Test
+    public void keepsNextOccurrenceOfRepeatingSinceTheLastDrain () {
+        long trigger = 1000000;
+        long drained = trigger + 2 * MINUTE;
+
+        List<NotificationRecord> records = new ArrayList<NotificationRecord>();
+        records.add(record(1, trigger, MINUTE));
+
+        DueQueue.Entry entry = DueQueue.build(records, drained).poll();
+
+        assertEquals(1, entry.id);
+        assertEquals(trigger + 3 * MINUTE, entry.due);
+    }
+
+    @Test
+    public void skipsNotificationsShownImmediately () {
+        List<NotificationRecord> records = new ArrayList<NotificationRecord>();
+        records.add(new NotificationRecord(1, 2000000, 0, "download", "{}"));
+
+        assertTrue(DueQueue.build(records, 1000000).isEmpty());
+    }
+
+    /**
+     * Record of a regular notification.
+     */
+    private static NotificationRecord record (int id, long trigger,
+                                              long interval) {
+        return new NotificationRecord(id, trigger, interval, "", "{}");
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trips of the binary options encoding against the JSON form.
+ */
+public class OptionsCodecTest {
+
+    @Test
+    public void roundTripsTheJsonForm () throws JSONException {
+        JSONObject dict = new JSONObject("{"
+                + "\"id\":7,\"at\":1445000000,\"every\":\"day\","
+                + "\"title\":\"Reminder\",\"text\":\"Grüße \\u2713\","
+                + "\"sound\":\"res://platform_default\",\"badge\":3,"
+                + "\"data\":\"{\\\"key\\\":\\\"value\\\"}\","
+                + "\"led\":\"FF0000\",\"ongoing\":false,\"autoClear\":true,"
+                + "\"progress\":42,\"updated\":true,\"text2\":\"\"}");
+
+        assertJSONEquals(dict, roundTrip(dict));
+    }
+
+    @Test
+    public void keepsNegativeAndExtremeNumbers () throws JSONException {
+        JSONObject dict = new JSONObject();
+
+        dict.put("id", -1);
+        dict.put("badge", Integer.MIN_VALUE);
+        dict.put("progress", Integer.MAX_VALUE);
+        dict.put("at", Long.MIN_VALUE);
+        dict.put("firstAt", Long.MAX_VALUE);
+        dict.put("ratio", -0.25);
+
+        JSONObject decoded = roundTrip(dict);
+
+        assertEquals(-1, decoded.get("id"));
+        assertEquals(Integer.MIN_VALUE, decoded.get("badge"));
+        assertEquals(Integer.MAX_VALUE, decoded.get("progress"));
+        assertEquals(Long.MIN_VALUE, decoded.get("at"));
+        assertEquals(Long.MAX_VALUE, decoded.get("firstAt"));
+        assertEquals(-0.25, decoded.getDouble("ratio"), 0);
+    }
+
+    @Test
+    public void keepsUnknownKeys () throws JSONException {
+        JSONObject nested = new JSONObject();
+        JSONObject dict   = new JSONObject();
+
+        nested.put("custom", "value");
+        nested.put("id", 2);
+        dict.put("customKey", nested);
+        dict.put("", "empty key");
+
+        assertJSONEquals(dict, roundTrip(dict));
+    }
+
+    @Test
+    public void keepsNestedArrays () throws JSONException {
+        JSONObject dict = new JSONObject();
+
+        dict.put("data", new JSONArray("[[1,[2,\"x\"]],null,true,{\"a\":[]}]"));
+
+        assertJSONEquals(dict, roundTrip(dict));
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsOtherVersions () throws JSONException {
+        byte[] data = OptionsCodec.encode(new JSONObject("{\"id\":1}"));
+
+        data[0]++;
+        OptionsCodec.decode(data);
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsTruncatedData () throws JSONException {
+        byte[] data = OptionsCodec.encode(new JSONObject("{\"text\":\"abc\"}"));
+
+        OptionsCodec.decode(Arrays.copyOf(data, data.length - 1));
+    }
+
+    /**
+     * Encode and decode the options.
+     */
+    private static JSONObject roundTrip (JSONObject dict) throws JSONException {
+        return OptionsCodec.decode(OptionsCodec.encode(dict));
+    }
+
+    /**
+     * Assert that both objects have the same keys and values. Numbers get
+     * compared by value, as the JSON parser might pick other types.
+     */
+    private static void assertJSONEquals (Object expected, Object actual) {
+
+        if (expected instanceof JSONObject) {
+            JSONObject exp = (JSONObject) expected;
+            JSONObject act = (JSONObject) actual;
+            Iterator<?> keys = exp.keys();
+
+            assertEquals(exp.length(), act.length());
+
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+
+                assertTrue("Missing key " + key, act.has(key));
+                assertJSONEquals(exp.opt(key), act.opt(key));
+            }
+        } else
+        if (expected instanceof JSONArray) {
+            JSONArray exp = (JSONArray) expected;
+            JSONArray act = (JSONArray) actual;
+
+            assertEquals(exp.length(), act.length());
+
+            for (int i = 0; i < exp.length(); i++) {
+                assertJSONEquals(exp.opt(i), act.opt(i));
+            }
+        } else
+        if (expected instanceof Number) {
+            assertEquals(((Number) expected).doubleValue(),
+                    ((Number) actual).doubleValue(), 0);
+        } else {
+            assertEquals(expected, actual);
+        }
+    }
+
+}
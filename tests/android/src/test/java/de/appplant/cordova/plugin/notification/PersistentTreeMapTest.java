@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package de.appplant.cordova.plugin.notification;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Persistent AVL tree behind the registry snapshots, checked against the
+ * TreeMap of the JDK.
+ */
+public class PersistentTreeMapTest {
+
+    @Test
+    public void putAndRemoveKeepFormerMapsUntouched () {
+        PersistentTreeMap<Integer, String> empty = PersistentTreeMap.empty();
+        PersistentTreeMap<Integer, String> one   = empty.put(1, "a");
+        PersistentTreeMap<Integer, String> two   = one.put(2, "b");
+        PersistentTreeMap<Integer, String> upd   = two.put(1, "c");
+        PersistentTreeMap<Integer, String> rem   = upd.remove(2);
+
+        assertEquals(0, empty.size());
+        assertNull(empty.get(1));
+
+        assertEquals(1, one.size());
+        assertEquals("a", one.get(1));
+        assertFalse(one.containsKey(2));
+
+        assertEquals(2, upd.size());
+        assertEquals("c", upd.get(1));
+        assertEquals("a", two.get(1));
+
+        assertEquals(1, rem.size());
+        assertFalse(rem.containsKey(2));
+        assertTrue(upd.containsKey(2));
+    }
+
+    @Test
+    public void removeOfAbsentKeyReturnsSameMap () {
+        PersistentTreeMap<Integer, String> map =
+                PersistentTreeMap.<Integer, String>empty().put(1, "a");
+
+        assertSame(map, map.remove(2));
+    }
+
+    @Test
+    public void matchesTreeMapForRandomChanges () {
+        Random random = new Random(42);
+        TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+        PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty();
+
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(500);
+
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (int key = 0; key < 500; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        assertEquals(new ArrayList<Integer>(expected.values()),
+                toList(map.values()));
+        assertBalanced(map);
+    }
+
+    @Test
+    public void iteratesRangesWithInclusiveAndExclusiveBounds () {
+        TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+        PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty();
+
+        for (int key = 0; key < 100; key += 3) {
+            expected.put(key, key);
+            map = map.put(key, key);
+        }
+
+        boolean[] flags = { true, false };
+
+        for (int from = -1; from <= 100; from++) {
+            for (int to = from; to <= 101; to++) {
+                for (boolean fromInclusive : flags) {
+                    for (boolean toInclusive : flags) {
+                        assertEquals(from + " " + fromInclusive + " "
+                                        + to + " " + toInclusive,
+                                new ArrayList<Integer>(expected.subMap(
+                                        from, fromInclusive, to, toInclusive).values()),
+                                toList(map.values(from, fromInclusive,
+                                        to, toInclusive)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void iteratesOpenRanges () {
+        PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty();
+
+        for (int key = 0; key < 10; key++) {
+            map = map.put(key, key);
+        }
+
+        assertEquals(list(7, 8, 9), toList(map.values(6, false, null, true)));
+        assertEquals(list(0, 1, 2), toList(map.values(null, true, 2, true)));
+        assertEquals(10, toList(map.values(null, true, null, true)).size());
+        assertFalse(map.values(10, true, null, true).hasNext());
+    }
+
+    @Test
+    public void staysBalancedForSortedChanges () {
+        PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty();
+
+        for (int key = 0; key < 4096; key++) {
+            map = map.put(key, key);
+        }
+
+        assertBalanced(map);
+
+        for (int key = 0; key < 4096; key += 2) {
+            map = map.remove(key);
+        }
+
+        assertEquals(2048, map.size());
+        assertBalanced(map);
+
+        for (int key = 4095; key >= 2048; key--) {
+            map = map.remove(key);
+        }
+
+        assertEquals(1024, map.size());
+        assertBalanced(map);
+    }
+
+    /**
+     * Assert the height bound of AVL trees for the size of the map.
+     */
+    private static void assertBalanced (PersistentTreeMap<?, ?> map) {
+        double bound = 1.4405 * Math.log(map.size() + 2) / Math.log(2) - 0.3277;
+
+        assertTrue("height " + map.height() + " of " + map.size(),
+                map.height() <= bound);
+    }
+
+    private static <T> List<T> toList (Iterator<T> it) {
+        List<T> list = new ArrayList<T>();
+
+        while (it.hasNext()) {
+            list.add(it.next());
+        }
+
+        return list;
+    }
+
+    private static List<Integer> list (Integer... values) {
+        List<Integer> list = new ArrayList<Integer>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+}
@@ -58,7 +58,8 @@ exports.setDefaults = function (newDefaults) {
  * @param {Object} msgs
  *      The notification properties
  * @param {Function} callback
- *      A function to be called after the notification has been canceled
+ *      A function to be called after the notifications have been scheduled.
+ *      Receives the result ({id, success}) for each notification (Android)
  * @param {Object?} scope
  *      The scope for the callback function
  * @param {Object?} args
@@ -125,6 +126,24 @@ exports.update = function (msgs, callback, scope, args) {
     }
 };
 
+/**
+ * Change the progress of a download notification. Meant for frequent
+ * updates, the progress doesn't get persisted and updates of the same
+ * notification are rate-limited.
+ *
+ * @param {Number} id
+ *      The ID of the notification
+ * @param {Number} progress
+ *      The progress in percent
+ * @param {Function} callback
+ *      A function to be called after the progress has been changed
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.updateProgress = function (id, progress, callback, scope) {
+    this.exec('updateProgress', [Number(id), Number(progress)], callback, scope);
+};
+
 /**
  * Clear the specified notification.
  *
@@ -297,7 +316,7 @@ exports.get = function () {
 
     ids = this.convertIds(ids);
 
-    this.exec('getAll', ids, callback, scope);
+    this.execChunked('getAll', ids, callback, scope);
 };
 
 /**
@@ -309,7 +328,7 @@ exports.get = function () {
  *      The scope for the callback function
  */
 exports.getAll = function (callback, scope) {
-    this.exec('getAll', null, callback, scope);
+    this.execChunked('getAll', null, callback, scope);
 };
 
 /**
@@ -345,7 +364,7 @@ exports.getScheduled = function () {
 
     ids = this.convertIds(ids);
 
-    this.exec('getScheduled', ids, callback, scope);
+    this.execChunked('getScheduled', ids, callback, scope);
 };
 
 /**
@@ -357,7 +376,7 @@ exports.getScheduled = function () {
  *      The scope for the callback function
  */
 exports.getAllScheduled = function (callback, scope) {
-    this.exec('getScheduled', null, callback, scope);
+    this.execChunked('getScheduled', null, callback, scope);
 };
 
 /**
@@ -393,7 +412,7 @@ exports.getTriggered = function () {
 
     ids = this.convertIds(ids);
 
-    this.exec('getTriggered', ids, callback, scope);
+    this.execChunked('getTriggered', ids, callback, scope);
 };
 
 /**
@@ -405,7 +424,7 @@ exports.getTriggered = function () {
  *      The scope for the callback function
  */
 exports.getAllTriggered = function (callback, scope) {
-    this.exec('getTriggered', null, callback, scope);
+    this.execChunked('getTriggered', null, callback, scope);
 };
 
 /**
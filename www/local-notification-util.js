@@ -270,6 +270,54 @@ exports.fireEvent = function (event) {
     }
 };
 
+/**
+ * Fire given event once per notification. Used by the native side to
+ * deliver an event for multiple notifications at once.
+ *
+ * @param {String} event
+ *      The event's name
+ * @param {Object[]} notifications
+ *      The notifications
+ * @param {String} state
+ *      The application state
+ */
+exports.fireEvents = function (event, notifications, state) {
+    for (var i = 0; i < notifications.length; i++) {
+        this.fireEvent(event, notifications[i], state);
+    }
+};
+
+/**
+ * Dispatch the event message pushed by the native side.
+ *
+ * @param {Object} msg
+ *      The event name, the application state and the notification
+ *      or the list of notifications. Or a batch of such messages.
+ */
+exports.onEvent = function (msg) {
+
+    if (!msg)
+        return;
+
+    if (msg.events) {
+        for (var i = 0; i < msg.events.length; i++) {
+            this.onEvent(msg.events[i]);
+        }
+        return;
+    }
+
+    if (!msg.event)
+        return;
+
+    if (msg.notifications) {
+        this.fireEvents(msg.event, msg.notifications, msg.state);
+    } else if (msg.notification) {
+        this.fireEvent(msg.event, msg.notification, msg.state);
+    } else {
+        this.fireEvent(msg.event, msg.state);
+    }
+};
+
 /**
  * Execute the native counterpart.
  *
@@ -295,6 +343,42 @@ exports.exec = function (action, args, callback, scope) {
     exec(fn, null, 'LocalNotification', action, params);
 };
 
+/**
+ * Execute the native counterpart which streams its list result in chunks.
+ * Collects the items of all chunks and calls the callback once with the
+ * complete list. Chunks might arrive as JSON encoded strings. Platforms
+ * which don't stream return the plain list, which is passed as it is.
+ *
+ * @param {String} action
+ *      The name of the action
+ * @param args[]
+ *      Array of arguments
+ * @param {Function} callback
+ *      The callback function
+ * @param {Object} scope
+ *      The scope for the function
+ */
+exports.execChunked = function (action, args, callback, scope) {
+    var fn    = this.createCallbackFn(callback, scope),
+        items = [];
+
+    this.exec(action, args, function (chunk) {
+        if (typeof chunk == 'string') {
+            chunk = JSON.parse(chunk);
+        }
+
+        if (Array.isArray(chunk)) {
+            if (fn) fn(chunk);
+            return;
+        }
+
+        items.push.apply(items, chunk.items);
+
+        if (!chunk.more && fn) {
+            fn(items);
+        }
+    });
+};
 
 /*********
  * HOOKS *
@@ -303,8 +387,11 @@ exports.exec = function (action, args, callback, scope) {
 // Called after 'deviceready' event
 channel.deviceready.subscribe(function () {
     // Device is ready now, the listeners are registered
-    // and all queued events can be executed.
-    exec(null, null, 'LocalNotification', 'deviceready', []);
+    // and all queued events can be executed. The callback
+    // is kept by the native side to push all further events.
+    exec(function (msg) {
+        exports.onEvent(msg);
+    }, null, 'LocalNotification', 'deviceready', []);
 });
 
 // Called before 'deviceready' event
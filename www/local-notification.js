@@ -78,6 +78,24 @@ exports.update = function (notifications, callback, scope, args) {
     this.core.update(notifications, callback, scope, args);
 };
 
+/**
+ * Change the progress of a download notification. Meant for frequent
+ * updates, the progress doesn't get persisted and updates of the same
+ * notification are rate-limited.
+ *
+ * @param {Number} id
+ *      The ID of the notification
+ * @param {Number} progress
+ *      The progress in percent
+ * @param {Function} callback
+ *      A function to be called after the progress has been changed
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.updateProgress = function (id, progress, callback, scope) {
+    this.core.updateProgress(id, progress, callback, scope);
+};
+
 /**
  * Clear the specified notification.
  *